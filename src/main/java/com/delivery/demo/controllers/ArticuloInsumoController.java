@@ -2,11 +2,14 @@ package com.delivery.demo.controllers;
 
 import com.delivery.demo.entities.articulos.ArticuloInsumo;
 import com.delivery.demo.services.insumo.ArticuloInsumoServiceImpl;
+import com.delivery.demo.services.menu.MenuSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.transaction.Transactional;
+import java.io.InputStream;
 import java.util.Map;
 
 @RestController
@@ -14,6 +17,10 @@ import java.util.Map;
 @RequestMapping(path = "api/v1/articulos/insumos")
 @Transactional
 public class ArticuloInsumoController extends BaseController<ArticuloInsumo, ArticuloInsumoServiceImpl> {
+
+    @Autowired
+    MenuSnapshot menuSnapshot;
+
     @PutMapping("/addStock/{id}")
     @Transactional
     public ResponseEntity<?> addStock(@PathVariable long id,
@@ -32,6 +39,42 @@ public class ArticuloInsumoController extends BaseController<ArticuloInsumo, Art
 
     }
 
+    @GetMapping("/{id}/historial")
+    public ResponseEntity<?> getHistorial(@PathVariable long id,
+                                          @RequestParam(defaultValue = "0") int page,
+                                          @RequestParam(defaultValue = "20") int size) {
+
+        try {
+
+            return ResponseEntity.status(HttpStatus.OK).body(service.getHistorial(id, page, size));
+
+        } catch (Exception e) {
+
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+
+        }
+
+    }
+
+    @PostMapping("/ingresoStock")
+    @Transactional
+    public ResponseEntity<?> ingresarStock(InputStream contenido,
+                                           @RequestHeader(value = "Content-Type", required = false) String contentType) {
+
+        try {
+
+            return ResponseEntity.status(HttpStatus.OK).body(service.ingresarStock(contenido, contentType));
+
+        } catch (Exception e) {
+
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+
+        }
+
+    }
+
     @PutMapping("/removeStock/{id}")
     @Transactional
     public ResponseEntity<?> removeStock(@PathVariable long id,
@@ -51,10 +94,16 @@ public class ArticuloInsumoController extends BaseController<ArticuloInsumo, Art
     }
 
     @GetMapping("/allPublic")
-    public ResponseEntity<?> findAllPublic(@RequestParam(required = false) String filter) {
+    public ResponseEntity<?> findAllPublic(@RequestParam(required = false) String filter,
+                                           @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 
         try {
 
+            if (filter == null || filter.equals("")) {
+                MenuSnapshot.Vista menu = menuSnapshot.getBebidas();
+                return jsonConEtag(menu.getJson(), menu.getEtag(), ifNoneMatch);
+            }
+
             return ResponseEntity.status(HttpStatus.OK).body(service.getBebidas(filter));
 
         } catch (Exception e) {
@@ -2,6 +2,8 @@ package com.delivery.demo.controllers;
 
 import com.delivery.demo.entities.articulos.ArticuloManufacturado;
 import com.delivery.demo.services.manufacturado.ArticuloManufacturadoServiceImpl;
+import com.delivery.demo.services.menu.MenuSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -14,11 +16,20 @@ import javax.transaction.Transactional;
 @Transactional
 public class ArticuloManufacturadoController extends BaseController<ArticuloManufacturado, ArticuloManufacturadoServiceImpl> {
 
+    @Autowired
+    MenuSnapshot menuSnapshot;
+
     @GetMapping("/allPublic")
-    public ResponseEntity<?> findAllPublic(@RequestParam(required = false) String filter) {
+    public ResponseEntity<?> findAllPublic(@RequestParam(required = false) String filter,
+                                           @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 
         try {
 
+            if (filter == null || filter.equals("")) {
+                MenuSnapshot.Vista menu = menuSnapshot.getManufacturados();
+                return jsonConEtag(menu.getJson(), menu.getEtag(), ifNoneMatch);
+            }
+
             return ResponseEntity.status(HttpStatus.OK).body(service.findAllPublic(filter));
 
         } catch (Exception e) {
@@ -4,14 +4,20 @@ import com.delivery.demo.entities.Base;
 import com.delivery.demo.services.base.BaseServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.transaction.Transactional;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class BaseController <E extends Base, S extends BaseServiceImpl<E, Long>> {
 
+    /* One entry of an If-None-Match list: "*" or an optionally weak quoted entity tag */
+    private static final Pattern ETAGS = Pattern.compile("\\*|(W/)?(\"[^\"]*\")");
+
     @Autowired
     protected S service;
 
@@ -21,15 +27,33 @@ public class BaseController <E extends Base, S extends BaseServiceImpl<E, Long>>
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "8") int size,
             @RequestParam(defaultValue = "id") String sortBy,
-            @RequestParam(defaultValue = "desc") String direction) {
+            @RequestParam(defaultValue = "desc") String direction,
+            @RequestParam(defaultValue = "false") boolean estimated) {
         try {
             return ResponseEntity.status(HttpStatus.OK)
-                    .body(service.findAll(filter, page, size, sortBy, direction));
+                    .body(service.findAll(filter, page, size, sortBy, direction, estimated));
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    @GetMapping("/seek")
+    public ResponseEntity<?> getAllSeek(
+            @RequestParam(required = false) String filter,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "8") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "desc") String direction,
+            @RequestParam(defaultValue = "true") boolean count) {
+        try {
+            return ResponseEntity.status(HttpStatus.OK)
+                    .body(service.findAllSeek(filter, after, size, sortBy, direction, count));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+        }
+    }
+
     @GetMapping("/all")
     @Transactional
     public ResponseEntity<?>  getAll(@RequestParam(required = false) String filter) {
@@ -165,4 +189,40 @@ public class BaseController <E extends Base, S extends BaseServiceImpl<E, Long>>
         }
 
     }
+
+    /*
+     * @desc Serves pre-serialized JSON with its ETag, or 304 when the client already has that version
+     * */
+    protected ResponseEntity<?> jsonConEtag(byte[] json, String etag, String ifNoneMatch) {
+        if (coincideEtag(etag, ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(json);
+    }
+
+    /*
+     * @desc If-None-Match check of RFC 7232: "*" or any entity tag of the list equal to the current one
+     * under the weak comparison, so a W/ prefix added by a proxy does not defeat the cache
+     * @return True if the client already has the current version
+     * */
+    private static boolean coincideEtag(String etag, String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        String actual = etag.startsWith("W/") ? etag.substring(2) : etag;
+        Matcher matcher = ETAGS.matcher(ifNoneMatch);
+
+        while (matcher.find()) {
+            if ("*".equals(matcher.group()) || actual.equals(matcher.group(2))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
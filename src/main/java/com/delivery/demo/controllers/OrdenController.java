@@ -1,29 +1,38 @@
 package com.delivery.demo.controllers;
 
+import com.delivery.demo.dtos.CambioEstadoDTO;
 import com.delivery.demo.entities.comprobantes.Estado;
 import com.delivery.demo.entities.comprobantes.Orden;
 import com.delivery.demo.entities.usuarios.Empleado;
+import com.delivery.demo.services.orden.NotificadorOrdenes;
 import com.delivery.demo.services.orden.OrdenServiceImpl;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Map;
+import java.util.List;
 
 @RestController
 @CrossOrigin(origins = "*", allowedHeaders = "*")
 @RequestMapping(path = "api/v1/comprobantes/ordenes")
 @Transactional
 public class OrdenController extends BaseController<Orden, OrdenServiceImpl> {
+    @Autowired
+    NotificadorOrdenes notificadorOrdenes;
+
     @PostMapping("/save")
-    public ResponseEntity<?> post(@RequestBody Orden entityForm, @RequestParam String clienteUid) {
+    public ResponseEntity<?> post(@RequestBody Orden entityForm, @RequestParam String clienteUid,
+                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
         try {
 
-            return ResponseEntity.status(HttpStatus.CREATED).body(service.save(entityForm, clienteUid));
+            return ResponseEntity.status(HttpStatus.CREATED).body(service.save(entityForm, clienteUid, idempotencyKey));
 
         } catch (Exception e) {
 
@@ -48,6 +57,20 @@ public class OrdenController extends BaseController<Orden, OrdenServiceImpl> {
         }
     }
 
+    @PutMapping("/estados")
+    public ResponseEntity<?> actualizarEstados(@RequestBody List<CambioEstadoDTO> cambios) {
+        try {
+
+            return ResponseEntity.status(HttpStatus.OK).body(service.actualizarEstados(cambios));
+
+        } catch (Exception e) {
+
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+
+        }
+    }
+
     @PutMapping("/repartidor/{ordenId}")
     public ResponseEntity<?> agregarRepartidor(@RequestBody Empleado repartidor, @PathVariable Long ordenId){
         try {
@@ -63,7 +86,7 @@ public class OrdenController extends BaseController<Orden, OrdenServiceImpl> {
     }
 
     @GetMapping("/cocina")
-    public ResponseEntity<Map<String, Object>> getOrdenesEnCocina(
+    public ResponseEntity<?> getOrdenesEnCocina(
             @RequestParam(required = false) String filter,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "8") int size,
@@ -72,11 +95,32 @@ public class OrdenController extends BaseController<Orden, OrdenServiceImpl> {
         try {
             return ResponseEntity.status(HttpStatus.OK)
                     .body(service.ordenesEnCocina(filter, page, size, sortBy, direction));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> getStream(@RequestParam(required = false) List<String> estados) {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(notificadorOrdenes.suscribirTablero(estados));
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    @GetMapping(path = "/seguimiento", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> getSeguimiento(@RequestParam String clienteUid) {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(notificadorOrdenes.suscribirCliente(clienteUid));
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+    }
+
     @GetMapping("/pendientes")
     public ResponseEntity<?> getOrdenesPendientes(@RequestParam String clienteUid) {
         try {
@@ -1,10 +1,13 @@
 package com.delivery.demo.controllers;
 
+import com.delivery.demo.services.insumo.NotificadorAlertas;
 import com.delivery.demo.services.reportes.ReportesService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.transaction.Transactional;
 import java.sql.Date;
@@ -21,6 +24,9 @@ public class ReportesController {
     @Autowired
     ReportesService reportesService;
 
+    @Autowired
+    NotificadorAlertas notificadorAlertas;
+
     @GetMapping("/stock")
     @Transactional
     public ResponseEntity<?> getInsumosOutOfStock() {
@@ -38,6 +44,56 @@ public class ReportesController {
 
     }
 
+    @GetMapping(path = "/stock/alertas", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> getAlertasStock() {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(notificadorAlertas.suscribir());
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @GetMapping("/stock/historico")
+    public ResponseEntity<?> getStockAl(@RequestParam Date fecha) {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(reportesService.getStockAl(fecha));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+        }
+    }
+
+    @PostMapping("/stock/snapshot")
+    public ResponseEntity<?> tomarSnapshotStock() {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(reportesService.tomarSnapshotStock());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+        }
+    }
+
+    @GetMapping("/stock/pronostico")
+    public ResponseEntity<?> getPronosticoStock(@RequestParam(defaultValue = "false") boolean soloReponer) {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(reportesService.getPronosticoStock(soloReponer));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+        }
+    }
+
+    @PostMapping("/stock/pronostico/reconstruir")
+    public ResponseEntity<?> reconstruirPronosticoStock() {
+        try {
+            reportesService.reconstruirPronosticoStock();
+            return ResponseEntity.status(HttpStatus.OK).body(true);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+        }
+    }
+
     @GetMapping("/ordenes")
     public ResponseEntity<?> getOrdenesPorPeriodo(
             @RequestParam String clienteUid,
@@ -66,10 +122,11 @@ public class ReportesController {
     @GetMapping("/topInsumos")
     public ResponseEntity<?> getTopInsumos(
             @RequestParam Date fechaInicio,
-            @RequestParam Date fechaFin) {
+            @RequestParam Date fechaFin,
+            @RequestParam(required = false) Integer top) {
         try {
             return ResponseEntity.status(HttpStatus.OK)
-                    .body(reportesService.getInsumoMasVendido(fechaInicio, fechaFin));
+                    .body(reportesService.getInsumoMasVendido(fechaInicio, fechaFin, top));
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -78,10 +135,11 @@ public class ReportesController {
     @GetMapping("/topManufacturados")
     public ResponseEntity<?> getTopManufacturados(
             @RequestParam Date fechaInicio,
-            @RequestParam Date fechaFin) {
+            @RequestParam Date fechaFin,
+            @RequestParam(required = false) Integer top) {
         try {
             return ResponseEntity.status(HttpStatus.OK)
-                    .body(reportesService.getManufacturadoMasVendido(fechaInicio, fechaFin));
+                    .body(reportesService.getManufacturadoMasVendido(fechaInicio, fechaFin, top));
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -99,4 +157,26 @@ public class ReportesController {
         }
     }
 
+    @GetMapping("/cache")
+    public ResponseEntity<?> getEstadisticasCache() {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(reportesService.getEstadisticasCache());
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @PostMapping("/ventas/reconstruir")
+    public ResponseEntity<?> reconstruirVentas(
+            @RequestParam(required = false) Date fechaInicio,
+            @RequestParam(required = false) Date fechaFin) {
+        try {
+            reportesService.reconstruirVentas(fechaInicio, fechaFin);
+            return ResponseEntity.status(HttpStatus.OK).body(true);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body
+                    ("{\"error\": \""+e.getMessage()+"\"}");
+        }
+    }
+
 }
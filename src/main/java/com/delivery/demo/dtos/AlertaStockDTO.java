@@ -0,0 +1,26 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/*
+ * @desc Stock level of a supply as watched by AlertasStock
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AlertaStockDTO implements Serializable {
+    private Long insumoId;
+    private String denominacion;
+    private double stockActual;
+    private double stockMinimo;
+
+    public boolean bajoMinimo() {
+        return stockMinimo > stockActual;
+    }
+}
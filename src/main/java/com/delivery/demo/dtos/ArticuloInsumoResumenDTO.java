@@ -0,0 +1,35 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+ * @desc Row of the paged supplies listing, without stock history
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArticuloInsumoResumenDTO implements Serializable {
+    private Long id;
+    private Date ultimaActualizacion;
+    private boolean oculto;
+    private boolean eliminado;
+    private boolean esInsumo;
+    private String denominacion;
+    private String descripcion;
+    private String imagen;
+    private double costo;
+    private double precio;
+    private double stockActual;
+    private double stockReservado;
+    private double stockMaximo;
+    private double stockMinimo;
+    private String unidadMedida;
+    private String rubro;
+}
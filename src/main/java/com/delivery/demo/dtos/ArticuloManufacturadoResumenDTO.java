@@ -0,0 +1,29 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+ * @desc Row of the paged manufactured articles listing, without recipe
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArticuloManufacturadoResumenDTO implements Serializable {
+    private Long id;
+    private Date ultimaActualizacion;
+    private boolean oculto;
+    private boolean eliminado;
+    private String denominacion;
+    private String descripcion;
+    private String imagen;
+    private double precio;
+    private int tiempoEstimadoCocina;
+    private String categoria;
+}
@@ -0,0 +1,21 @@
+package com.delivery.demo.dtos;
+
+import com.delivery.demo.entities.comprobantes.Estado;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/*
+ * @desc One item of a bulk state change: the order and its new state
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CambioEstadoDTO implements Serializable {
+    private Long ordenId;
+    private Estado estado;
+}
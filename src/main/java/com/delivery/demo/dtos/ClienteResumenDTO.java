@@ -0,0 +1,30 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+ * @desc Row of the paged customers listing, without delivery addresses
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClienteResumenDTO implements Serializable {
+    private Long id;
+    private Date ultimaActualizacion;
+    private boolean oculto;
+    private boolean eliminado;
+    private Date fechaAlta;
+    private String nombre;
+    private String apellido;
+    private String telefono;
+    private String email;
+    private String uid;
+    private String rol;
+}
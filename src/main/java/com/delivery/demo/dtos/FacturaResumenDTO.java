@@ -0,0 +1,31 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+ * @desc Row of the paged invoices listing, the full invoice is served by /{id}
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacturaResumenDTO implements Serializable {
+    private Long id;
+    private Date ultimaActualizacion;
+    private boolean oculto;
+    private boolean eliminado;
+    private Date fecha;
+    private String formaPago;
+    private double montoDescuento;
+    private double total;
+    private String estado;
+    private Long ordenId;
+    private String cajeroNombre;
+    private String cajeroApellido;
+}
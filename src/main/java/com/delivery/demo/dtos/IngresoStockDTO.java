@@ -0,0 +1,21 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/*
+ * @desc Summary of a bulk stock intake: lines read, distinct supplies updated and total quantity added
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngresoStockDTO implements Serializable {
+    private int lineas;
+    private int insumos;
+    private double cantidad;
+}
@@ -0,0 +1,27 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+ * @desc Compact state of an order that has not been delivered or cancelled yet, kept by OrdenesActivas
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrdenActivaDTO implements Serializable {
+    private Long id;
+    private Date fecha;
+    private String estado;
+    private Long clienteId;
+    private int tiempoTotalPreparacion;
+    private Date horarioEntrega;
+    private boolean delivery;
+    private String formaPago;
+}
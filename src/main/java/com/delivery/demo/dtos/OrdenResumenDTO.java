@@ -0,0 +1,37 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+ * @desc Row of the paged orders listing, the full order is served by /{id}
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrdenResumenDTO implements Serializable {
+    private Long id;
+    private Date ultimaActualizacion;
+    private boolean oculto;
+    private boolean eliminado;
+    private Date fecha;
+    private String formaPago;
+    private double montoDescuento;
+    private double total;
+    private String estado;
+    private String aclaraciones;
+    private boolean delivery;
+    private int tiempoTotalPreparacion;
+    private Date horarioEntrega;
+    private Long clienteId;
+    private String clienteNombre;
+    private String clienteApellido;
+    private String repartidorNombre;
+    private String repartidorApellido;
+}
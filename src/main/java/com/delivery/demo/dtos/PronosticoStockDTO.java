@@ -0,0 +1,31 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/*
+ * @desc Consumption forecast of a supply: moving average and average per day of the week (monday first)
+ *       of its outflows, days until its available stock reaches stockMinimo and runs out, and the
+ *       quantity to order to get back to stockMaximo when it should be restocked
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PronosticoStockDTO implements Serializable {
+    private Long insumoId;
+    private String denominacion;
+    private double stockDisponible;
+    private double stockMinimo;
+    private double stockMaximo;
+    private double consumoDiario;
+    private double[] consumoPorDiaSemana;
+    private Integer diasHastaMinimo;
+    private Integer diasHastaAgotarse;
+    private boolean reponer;
+    private double cantidadSugerida;
+}
@@ -0,0 +1,22 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/*
+ * @desc Outcome of one item of a bulk state change: the state the order ended in or the error
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoCambioEstadoDTO implements Serializable {
+    private Long ordenId;
+    private boolean exito;
+    private String estado;
+    private String error;
+}
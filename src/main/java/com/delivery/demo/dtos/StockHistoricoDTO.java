@@ -0,0 +1,22 @@
+package com.delivery.demo.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/*
+ * @desc Stock of a supply at a past instant, replayed from the ledger, next to its current stockActual
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockHistoricoDTO implements Serializable {
+    private Long insumoId;
+    private String denominacion;
+    private double stock;
+    private double stockActual;
+}
@@ -1,12 +1,14 @@
 package com.delivery.demo.entities.articulos;
 
 import com.delivery.demo.entities.Base;
+import com.delivery.demo.services.insumo.AlertasStockListener;
+import com.delivery.demo.services.menu.MenuListener;
+import com.delivery.demo.services.search.SearchIndexListener;
 import lombok.*;
 import org.hibernate.envers.Audited;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import javax.persistence.*;
-import java.util.List;
 
 @Getter
 @Setter
@@ -14,7 +16,7 @@ import java.util.List;
 @AllArgsConstructor
 @ToString
 @Entity
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, SearchIndexListener.class, MenuListener.class, AlertasStockListener.class})
 @Audited
 @Table(name = "articulo_insumo")
 public class ArticuloInsumo extends Base {
@@ -26,12 +28,13 @@ public class ArticuloInsumo extends Base {
     private String imagen;
     private double costo;
     private double precio;
+    @Column(updatable = false)
     private double stockActual;
+    @Column(insertable = false, updatable = false, columnDefinition = "double default 0")
+    private double stockReservado;
     private double stockMaximo;
     private double stockMinimo;
     private String unidadMedida;
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
-    private List<HistorialStock> historialStock;
     @ManyToOne
     @JoinColumn(name = "fk_rubro")
     private Rubro rubro;
@@ -1,6 +1,8 @@
 package com.delivery.demo.entities.articulos;
 
 import com.delivery.demo.entities.Base;
+import com.delivery.demo.services.menu.MenuListener;
+import com.delivery.demo.services.search.SearchIndexListener;
 import lombok.*;
 import org.hibernate.envers.Audited;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -14,7 +16,7 @@ import java.util.List;
 @AllArgsConstructor
 @ToString
 @Entity
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, SearchIndexListener.class, MenuListener.class})
 @Audited
 @Table(name = "manufacturado")
 public class ArticuloManufacturado extends Base {
@@ -1,6 +1,8 @@
 package com.delivery.demo.entities.articulos;
 
 import com.delivery.demo.entities.Base;
+import com.delivery.demo.services.menu.MenuListener;
+import com.delivery.demo.services.search.SearchIndexListener;
 import lombok.*;
 import org.hibernate.envers.Audited;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -13,7 +15,7 @@ import javax.persistence.*;
 @AllArgsConstructor
 @ToString
 @Entity
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, SearchIndexListener.class, MenuListener.class})
 @Audited
 @Table(name = "categoria")
 public class Categoria extends Base {
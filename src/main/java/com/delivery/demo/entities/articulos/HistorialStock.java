@@ -2,22 +2,29 @@ package com.delivery.demo.entities.articulos;
 
 import com.delivery.demo.entities.Base;
 import lombok.*;
-import org.hibernate.envers.Audited;
+import org.hibernate.annotations.Immutable;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import javax.persistence.*;
 import java.util.Date;
 
+/*
+ * @desc Append-only stock ledger: one row per stock movement of a supply. Rows are only inserted, in JDBC
+ *       batches by ArticuloInsumoRepositoryImpl, and read by page through the insumo and fechaMovimiento index
+ * */
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @ToString
 @Entity
+@Immutable
 @EntityListeners(AuditingEntityListener.class)
-@Audited
-@Table(name = "historial_stock")
+@Table(name = "historial_stock",
+        indexes = @Index(name = "idx_historial_stock_insumo_fecha", columnList = "fk_insumo, fechaMovimiento"))
 public class HistorialStock extends Base {
+    @Column(name = "fk_insumo")
+    private Long insumoId;
     private double cantidad;
     private Date fechaMovimiento;
     @Column(columnDefinition = "boolean default false")
@@ -0,0 +1,23 @@
+package com.delivery.demo.entities.articulos;
+
+import com.delivery.demo.entities.Base;
+import lombok.*;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "reserva_stock", indexes = @Index(name = "idx_reserva_stock_orden", columnList = "fk_orden"))
+public class ReservaStock extends Base {
+    @Column(name = "fk_orden", nullable = false)
+    private Long ordenId;
+    @Column(name = "fk_insumo", nullable = false)
+    private Long insumoId;
+    private double cantidad;
+}
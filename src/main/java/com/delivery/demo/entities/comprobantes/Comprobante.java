@@ -18,7 +18,10 @@ import java.util.List;
 @Entity
 @EntityListeners(AuditingEntityListener.class)
 @Audited
-@Table(name = "comprobante")
+@Table(name = "comprobante", indexes = {
+        @Index(name = "idx_comprobante_fecha", columnList = "fecha"),
+        @Index(name = "idx_comprobante_forma_pago", columnList = "formaPago")
+})
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "tipo", discriminatorType= DiscriminatorType.STRING)
 public class Comprobante extends Base {
@@ -0,0 +1,39 @@
+package com.delivery.demo.entities.comprobantes;
+
+/*
+ * @desc Order and invoice states known by the application, identified by the exact
+ *       "denominacion" stored in the estado table
+ * */
+public enum TipoEstado {
+    PENDIENTE("pendiente"),
+    EN_PROCESO("en proceso"),
+    DEMORADO("demorado"),
+    LISTO("listo"),
+    EN_CAMINO("en camino"),
+    ENTREGADO("entregado"),
+    CANCELADO("cancelado"),
+    PAGADO("pagado"),
+    ANULADO("anulado");
+
+    private final String denominacion;
+
+    TipoEstado(String denominacion) {
+        this.denominacion = denominacion;
+    }
+
+    public String getDenominacion() {
+        return denominacion;
+    }
+
+    /*
+     * @desc Compares the given state against this type by its exact denomination
+     * @return True if the state has this type's denomination
+     * */
+    public boolean es(Estado estado) {
+        return estado != null && es(estado.getDenominacion());
+    }
+
+    public boolean es(String denominacion) {
+        return denominacion != null && this.denominacion.equals(denominacion.trim().toLowerCase());
+    }
+}
@@ -0,0 +1,30 @@
+package com.delivery.demo.entities.reportes;
+
+import com.delivery.demo.entities.Base;
+import lombok.*;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/*
+ * @desc Rollup of the billed orders of one cliente on one day, by the fecha of the orden.
+ *       Maintained by VentasRollup
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "ordenes_cliente_diaria",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ordenes_cliente_diaria", columnNames = {"dia", "fk_cliente"}))
+public class OrdenesClienteDiaria extends Base {
+    @Temporal(TemporalType.DATE)
+    @Column(nullable = false)
+    private Date dia;
+    @Column(name = "fk_cliente", nullable = false)
+    private Long clienteId;
+    private long ordenes;
+}
@@ -0,0 +1,30 @@
+package com.delivery.demo.entities.reportes;
+
+import com.delivery.demo.entities.Base;
+import lombok.*;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/*
+ * @desc Checkpoint of the stock ledger: the stock of one supply at one instant, the sum of every
+ *       HistorialStock movement before it. Written by SnapshotsStock. The unique key leads with the
+ *       supply so the latest checkpoint before a date is one index lookup
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "snapshot_stock",
+        uniqueConstraints = @UniqueConstraint(name = "uk_snapshot_stock", columnNames = {"fk_insumo", "fecha"}))
+public class SnapshotStock extends Base {
+    @Column(name = "fk_insumo", nullable = false)
+    private Long insumoId;
+    @Column(nullable = false)
+    private Date fecha;
+    private double stock;
+}
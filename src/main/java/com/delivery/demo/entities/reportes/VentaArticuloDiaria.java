@@ -0,0 +1,34 @@
+package com.delivery.demo.entities.reportes;
+
+import com.delivery.demo.entities.Base;
+import lombok.*;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/*
+ * @desc Rollup of the billed sales: quantity and revenue of one article on one day, by the fecha of
+ *       the orden. Maintained by VentasRollup. The unique key leads with manufacturado and dia, the
+ *       columns the top seller reports filter by
+ * */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "venta_articulo_diaria",
+        uniqueConstraints = @UniqueConstraint(name = "uk_venta_articulo_diaria", columnNames = {"manufacturado", "dia", "fk_articulo"}))
+public class VentaArticuloDiaria extends Base {
+    @Temporal(TemporalType.DATE)
+    @Column(nullable = false)
+    private Date dia;
+    @Column(nullable = false)
+    private boolean manufacturado;
+    @Column(name = "fk_articulo", nullable = false)
+    private Long articuloId;
+    private double cantidad;
+    private double ingresos;
+}
@@ -1,6 +1,7 @@
 package com.delivery.demo.entities.usuarios;
 
 import com.delivery.demo.entities.direccion.DireccionDelivery;
+import com.delivery.demo.services.search.SearchIndexListener;
 import lombok.*;
 import org.hibernate.envers.Audited;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -14,7 +15,7 @@ import java.util.List;
 @AllArgsConstructor
 @ToString
 @Entity
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, SearchIndexListener.class})
 @Audited
 @DiscriminatorValue(value = "cliente")
 public class Cliente extends Usuario {
@@ -1,6 +1,7 @@
 package com.delivery.demo.entities.usuarios;
 
 import com.delivery.demo.entities.Base;
+import com.delivery.demo.services.search.SearchIndexListener;
 import lombok.*;
 import org.hibernate.envers.Audited;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -15,7 +16,7 @@ import javax.persistence.Table;
 @AllArgsConstructor
 @ToString
 @Entity
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, SearchIndexListener.class})
 @Audited
 @Table(name = "rol")
 public class Rol extends Base {
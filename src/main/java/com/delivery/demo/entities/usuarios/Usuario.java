@@ -1,6 +1,7 @@
 package com.delivery.demo.entities.usuarios;
 
 import com.delivery.demo.entities.Base;
+import com.delivery.demo.services.usuario.UsuarioListener;
 import lombok.*;
 import org.hibernate.envers.Audited;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -14,7 +15,7 @@ import java.util.Date;
 @AllArgsConstructor
 @ToString
 @Entity
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, UsuarioListener.class})
 @Audited
 @Table(name = "usuario")
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
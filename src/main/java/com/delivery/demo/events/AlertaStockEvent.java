@@ -0,0 +1,18 @@
+package com.delivery.demo.events;
+
+import com.delivery.demo.dtos.AlertaStockDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/*
+ * @desc The stock of a supply crossed its stockMinimo, downwards (bajoMinimo) or back up. Published by
+ *       AlertasStock once the change that crossed it has been committed
+ * */
+@Getter
+@AllArgsConstructor
+@ToString
+public class AlertaStockEvent {
+    private AlertaStockDTO insumo;
+    private boolean bajoMinimo;
+}
@@ -0,0 +1,48 @@
+package com.delivery.demo.events;
+
+import com.delivery.demo.entities.comprobantes.Orden;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Date;
+
+/*
+ * @desc Lifecycle change of an order, published by the services whenever an order is created,
+ *       changes its state or is deleted or restored. A deleted order has no estadoActual. Listeners
+ *       receive it once the transaction has been committed
+ * */
+@Getter
+@AllArgsConstructor
+@ToString
+public class OrdenEvent {
+    private Long ordenId;
+    private Long clienteId;
+    private String estadoAnterior;
+    private String estadoActual;
+    private int tiempoTotalPreparacion;
+    private Date horarioEntrega;
+    private Date fecha;
+    private boolean delivery;
+    private String formaPago;
+
+    public static OrdenEvent of(Orden orden, String estadoAnterior) {
+        return new OrdenEvent(
+                orden.getId(),
+                orden.getCliente() != null ? orden.getCliente().getId() : null,
+                estadoAnterior,
+                orden.getEstado() != null ? orden.getEstado().getDenominacion() : null,
+                orden.getTiempoTotalPreparacion(),
+                orden.getHorarioEntrega(),
+                orden.getFecha(),
+                orden.isDelivery(),
+                orden.getFormaPago());
+    }
+
+    public static OrdenEvent eliminada(Orden orden) {
+        OrdenEvent event = of(orden, null);
+        event.estadoAnterior = event.estadoActual;
+        event.estadoActual = null;
+        return event;
+    }
+}
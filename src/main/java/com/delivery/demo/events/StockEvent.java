@@ -0,0 +1,18 @@
+package com.delivery.demo.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Set;
+
+/*
+ * @desc Stock of some supplies changed through the JDBC batches of ArticuloInsumoRepository, which
+ *       bypass the JPA listeners. Listeners receive it once the transaction has been committed
+ * */
+@Getter
+@AllArgsConstructor
+@ToString
+public class StockEvent {
+    private Set<Long> insumoIds;
+}
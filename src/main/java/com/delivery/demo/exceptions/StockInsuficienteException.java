@@ -0,0 +1,20 @@
+package com.delivery.demo.exceptions;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/*
+ * @desc Thrown when one or more supplies do not have enough stock for an operation.
+ *       Holds the ids and the names of every supply that was short
+ * */
+@Getter
+public class StockInsuficienteException extends Exception {
+
+    private final List<Long> insumosFaltantes;
+
+    public StockInsuficienteException(List<Long> insumosFaltantes, List<String> denominaciones) {
+        super("Stock insuficiente: " + String.join(", ", denominaciones));
+        this.insumosFaltantes = insumosFaltantes;
+    }
+}
@@ -1,20 +1,25 @@
 package com.delivery.demo.repositories.articulos;
 
-import com.delivery.demo.dtos.GraficosDTO;
+import com.delivery.demo.dtos.AlertaStockDTO;
 import com.delivery.demo.entities.articulos.ArticuloInsumo;
 import com.delivery.demo.repositories.BaseRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.sql.Date;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface ArticuloInsumoRepository extends BaseRepository<ArticuloInsumo, Long> {
-    @Query(
-            value = "SELECT articulo_insumo.denominacion AS \"name\" , SUM(detalle_orden.cantidad) AS \"value\" FROM articulo_insumo INNER JOIN detalle_orden ON detalle_orden.fk_insumo = articulo_insumo.id WHERE detalle_orden.ultima_actualizacion BETWEEN :fechaInicio AND :fechaFin GROUP BY articulo_insumo.id ORDER BY SUM(cantidad) DESC LIMIT 5",
-            nativeQuery = true
-    )
-    List<Object[]> getMasVendidos(@Param("fechaInicio")Date fechaInicio, @Param("fechaFin") Date fechaFin);
+public interface ArticuloInsumoRepository extends BaseRepository<ArticuloInsumo, Long>, ArticuloInsumoRepositoryCustom {
+    @Query("SELECT a.id, a.stockActual - a.stockReservado FROM ArticuloInsumo a WHERE a.id IN :ids")
+    List<Object[]> getStockDisponible(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT new com.delivery.demo.dtos.AlertaStockDTO(a.id, a.denominacion, a.stockActual, a.stockMinimo) " +
+            "FROM ArticuloInsumo a WHERE a.eliminado = false AND a.stockMinimo > a.stockActual")
+    List<AlertaStockDTO> getBajoMinimo();
+
+    @Query("SELECT new com.delivery.demo.dtos.AlertaStockDTO(a.id, a.denominacion, a.stockActual, a.stockMinimo) " +
+            "FROM ArticuloInsumo a WHERE a.eliminado = false AND a.id IN :ids")
+    List<AlertaStockDTO> getNivelesStock(@Param("ids") Collection<Long> ids);
 }
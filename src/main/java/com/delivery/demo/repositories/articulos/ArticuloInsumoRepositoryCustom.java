@@ -0,0 +1,50 @@
+package com.delivery.demo.repositories.articulos;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public interface ArticuloInsumoRepositoryCustom {
+
+    /*
+     * @desc Decrements the stock of every supply in a single JDBC batch, only where the stock not reserved
+     *       by other orders is enough. If any supply is short the applied decrements are reverted
+     * @return List<Long> ids of the supplies that were short, empty if every decrement was applied
+     * */
+    public List<Long> descontarStock(Map<Long, Double> cantidades, Date fecha);
+
+    /*
+     * @desc Reserves stock of every supply in a single JDBC batch, only where the stock not reserved
+     *       by other orders is enough. If any supply is short the applied reservations are reverted
+     * @return List<Long> ids of the supplies that were short, empty if every reservation was applied
+     * */
+    public List<Long> reservarStock(Map<Long, Double> cantidades, Date fecha);
+
+    /*
+     * @desc Increments the stock of every supply in a single JDBC batch
+     * @return List<Long> ids of the supplies that do not exist, empty if every increment was applied
+     * */
+    public List<Long> agregarStock(Map<Long, Double> cantidades, Date fecha);
+
+    /*
+     * @desc Releases previously reserved stock in a single JDBC batch
+     * */
+    public void liberarStock(Map<Long, Double> cantidades, Date fecha);
+
+    /*
+     * @desc Turns previously reserved stock into a stock decrement in a single JDBC batch
+     * */
+    public void consumirReserva(Map<Long, Double> cantidades, Date fecha);
+
+    /*
+     * @desc Appends one HistorialStock row per supply to the ledger in a single JDBC batch
+     * */
+    public void registrarMovimientos(Map<Long, Double> cantidades, Date fecha, boolean operacion);
+
+    /*
+     * @desc Copies the supply of the HistorialStock rows written before the ledger had its own fk_insumo
+     *       column, from the old articulo_insumo_historial_stock join table
+     * @return int rows updated, 0 once every row is migrated or if the join table does not exist
+     * */
+    public int migrarHistorial();
+}
@@ -0,0 +1,252 @@
+package com.delivery.demo.repositories.articulos;
+
+import com.delivery.demo.events.StockEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.*;
+import java.util.*;
+import java.util.Date;
+
+/*
+ * Stock mutations written with plain JDBC batches, so an order costs a constant number of
+ * round trips instead of one select and one update per supply. Every update is atomic and
+ * conditional in the database, and ids are processed in ascending order so concurrent
+ * transactions always take the row locks in the same order and cannot deadlock each other.
+ * A batch that times out waiting for a lock is rolled back to a savepoint and retried with
+ * exponential backoff
+ * */
+public class ArticuloInsumoRepositoryImpl implements ArticuloInsumoRepositoryCustom {
+
+    private static final String DESCONTAR_STOCK =
+            "UPDATE articulo_insumo SET stock_actual = stock_actual - ?, ultima_actualizacion = ? WHERE id = ? AND stock_actual - stock_reservado >= ?";
+
+    private static final String AGREGAR_STOCK =
+            "UPDATE articulo_insumo SET stock_actual = stock_actual + ?, ultima_actualizacion = ? WHERE id = ?";
+
+    private static final String RESERVAR_STOCK =
+            "UPDATE articulo_insumo SET stock_reservado = stock_reservado + ?, ultima_actualizacion = ? WHERE id = ? AND stock_actual - stock_reservado >= ?";
+
+    private static final String LIBERAR_STOCK =
+            "UPDATE articulo_insumo SET stock_reservado = GREATEST(stock_reservado - ?, 0), ultima_actualizacion = ? WHERE id = ?";
+
+    private static final String CONSUMIR_RESERVA =
+            "UPDATE articulo_insumo SET stock_actual = stock_actual - ?, stock_reservado = GREATEST(stock_reservado - ?, 0), ultima_actualizacion = ? WHERE id = ?";
+
+    private static final String INSERTAR_HISTORIAL =
+            "INSERT INTO historial_stock (fk_insumo, cantidad, fecha_movimiento, operacion, oculto, eliminado, ultima_actualizacion) VALUES (?, ?, ?, ?, false, false, ?)";
+
+    private static final String EXISTE_HISTORIAL_INSUMO =
+            "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = 'articulo_insumo_historial_stock'";
+
+    private static final String MIGRAR_HISTORIAL_INSUMO =
+            "UPDATE historial_stock h JOIN articulo_insumo_historial_stock j ON j.historial_stock_id = h.id SET h.fk_insumo = j.articulo_insumo_id WHERE h.fk_insumo IS NULL";
+
+    /* MySQL "Lock wait timeout exceeded", only the statement is rolled back so it can be retried */
+    private static final int LOCK_WAIT_TIMEOUT = 1205;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    @Value("${delivery.stock.reintentos:3}")
+    int reintentos;
+
+    @Value("${delivery.stock.backoff-ms:50}")
+    long backoff;
+
+    @Override
+    public List<Long> descontarStock(Map<Long, Double> cantidades, Date fecha) {
+        return aplicarCondicional(DESCONTAR_STOCK, AGREGAR_STOCK, cantidades, fecha);
+    }
+
+    @Override
+    public List<Long> reservarStock(Map<Long, Double> cantidades, Date fecha) {
+        return aplicarCondicional(RESERVAR_STOCK, LIBERAR_STOCK, cantidades, fecha);
+    }
+
+    @Override
+    public List<Long> agregarStock(Map<Long, Double> cantidades, Date fecha) {
+        if (cantidades.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final List<Map.Entry<Long, Double>> movimientos = ordenar(cantidades);
+        final Timestamp timestamp = new Timestamp(fecha.getTime());
+
+        int[] resultados = ejecutarLote(AGREGAR_STOCK, movimientos, (ps, movimiento) -> {
+            ps.setDouble(1, movimiento.getValue());
+            ps.setTimestamp(2, timestamp);
+            ps.setLong(3, movimiento.getKey());
+        });
+
+        List<Long> inexistentes = new ArrayList<>();
+        for (int i = 0; i < movimientos.size(); i++) {
+            if (resultados[i] == 0) {
+                inexistentes.add(movimientos.get(i).getKey());
+            }
+        }
+
+        if (inexistentes.isEmpty()) {
+            publicar(cantidades);
+        }
+
+        return inexistentes;
+    }
+
+    @Override
+    public void liberarStock(Map<Long, Double> cantidades, Date fecha) {
+        final Timestamp timestamp = new Timestamp(fecha.getTime());
+        ejecutarLote(LIBERAR_STOCK, ordenar(cantidades), (ps, movimiento) -> {
+            ps.setDouble(1, movimiento.getValue());
+            ps.setTimestamp(2, timestamp);
+            ps.setLong(3, movimiento.getKey());
+        });
+        publicar(cantidades);
+    }
+
+    @Override
+    public void consumirReserva(Map<Long, Double> cantidades, Date fecha) {
+        final Timestamp timestamp = new Timestamp(fecha.getTime());
+        ejecutarLote(CONSUMIR_RESERVA, ordenar(cantidades), (ps, movimiento) -> {
+            ps.setDouble(1, movimiento.getValue());
+            ps.setDouble(2, movimiento.getValue());
+            ps.setTimestamp(3, timestamp);
+            ps.setLong(4, movimiento.getKey());
+        });
+        publicar(cantidades);
+    }
+
+    @Override
+    public void registrarMovimientos(Map<Long, Double> cantidades, Date fecha, boolean operacion) {
+        if (cantidades.isEmpty()) {
+            return;
+        }
+
+        final Timestamp timestamp = new Timestamp(fecha.getTime());
+
+        ejecutarLote(INSERTAR_HISTORIAL, ordenar(cantidades), (ps, movimiento) -> {
+            ps.setLong(1, movimiento.getKey());
+            ps.setDouble(2, movimiento.getValue());
+            ps.setTimestamp(3, timestamp);
+            ps.setBoolean(4, operacion);
+            ps.setTimestamp(5, timestamp);
+        });
+        publicar(cantidades);
+    }
+
+    @Override
+    public int migrarHistorial() {
+        Integer tablas = jdbcTemplate.queryForObject(EXISTE_HISTORIAL_INSUMO, Integer.class);
+        if (tablas == null || tablas == 0) {
+            return 0;
+        }
+        return jdbcTemplate.update(MIGRAR_HISTORIAL_INSUMO);
+    }
+
+    /*
+     * @desc Applies a conditional update (quantity, fecha, id, quantity) to every supply. If any row
+     *       is not updated the applied ones are reverted with the compensating update (quantity, fecha, id)
+     * @return List<Long> ids of the supplies whose condition failed
+     * */
+    private List<Long> aplicarCondicional(String sql, String compensacion, Map<Long, Double> cantidades, Date fecha) {
+        if (cantidades.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final List<Map.Entry<Long, Double>> movimientos = ordenar(cantidades);
+        final Timestamp timestamp = new Timestamp(fecha.getTime());
+
+        int[] resultados = ejecutarLote(sql, movimientos, (ps, movimiento) -> {
+            ps.setDouble(1, movimiento.getValue());
+            ps.setTimestamp(2, timestamp);
+            ps.setLong(3, movimiento.getKey());
+            ps.setDouble(4, movimiento.getValue());
+        });
+
+        List<Long> faltantes = new ArrayList<>();
+        List<Map.Entry<Long, Double>> aplicados = new ArrayList<>();
+
+        for (int i = 0; i < movimientos.size(); i++) {
+            if (resultados[i] == 0) {
+                faltantes.add(movimientos.get(i).getKey());
+            } else {
+                aplicados.add(movimientos.get(i));
+            }
+        }
+
+        if (!faltantes.isEmpty() && !aplicados.isEmpty()) {
+            ejecutarLote(compensacion, aplicados, (ps, movimiento) -> {
+                ps.setDouble(1, movimiento.getValue());
+                ps.setTimestamp(2, timestamp);
+                ps.setLong(3, movimiento.getKey());
+            });
+        }
+
+        if (faltantes.isEmpty()) {
+            publicar(cantidades);
+        }
+
+        return faltantes;
+    }
+
+    /*
+     * @desc Runs the statement once per entry in a single JDBC batch protected by a savepoint
+     * @return int[] update count of every entry
+     * */
+    private int[] ejecutarLote(String sql, List<Map.Entry<Long, Double>> movimientos, Parametros parametros) {
+        if (movimientos.isEmpty()) {
+            return new int[0];
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            for (int intento = 0; ; intento++) {
+                Savepoint savepoint = connection.setSavepoint();
+
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    for (Map.Entry<Long, Double> movimiento : movimientos) {
+                        parametros.set(ps, movimiento);
+                        ps.addBatch();
+                    }
+
+                    int[] resultados = ps.executeBatch();
+                    connection.releaseSavepoint(savepoint);
+                    return resultados;
+
+                } catch (SQLException e) {
+                    if (e.getErrorCode() != LOCK_WAIT_TIMEOUT || intento >= reintentos) {
+                        throw e;
+                    }
+
+                    connection.rollback(savepoint);
+
+                    try {
+                        Thread.sleep(backoff << intento);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+            }
+        });
+    }
+
+    private void publicar(Map<Long, Double> cantidades) {
+        if (!cantidades.isEmpty()) {
+            eventPublisher.publishEvent(new StockEvent(new HashSet<>(cantidades.keySet())));
+        }
+    }
+
+    private List<Map.Entry<Long, Double>> ordenar(Map<Long, Double> cantidades) {
+        return new ArrayList<>(new TreeMap<>(cantidades).entrySet());
+    }
+
+    private interface Parametros {
+        void set(PreparedStatement ps, Map.Entry<Long, Double> movimiento) throws SQLException;
+    }
+}
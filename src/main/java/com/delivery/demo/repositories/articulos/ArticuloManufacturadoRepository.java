@@ -6,14 +6,11 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.sql.Date;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ArticuloManufacturadoRepository extends BaseRepository<ArticuloManufacturado, Long> {
-    @Query(
-            value = "SELECT manufacturado.denominacion AS \"name\" , SUM(detalle_orden.cantidad) AS \"value\" FROM manufacturado INNER JOIN detalle_orden ON detalle_orden.fk_manufacturado = manufacturado.id WHERE detalle_orden.ultima_actualizacion BETWEEN :fechaInicio AND :fechaFin GROUP BY manufacturado.id ORDER BY SUM(cantidad) DESC LIMIT 5\n",
-            nativeQuery = true
-    )
-    List<Object[]> getMasVendidos(@Param("fechaInicio") Date fechaInicio, @Param("fechaFin") Date fechaFin);
+    @Query("SELECT m.id, d.insumo.id, d.cantidad FROM ArticuloManufacturado m JOIN m.detallesReceta d WHERE m.id IN :ids")
+    List<Object[]> getRecetas(@Param("ids") Collection<Long> ids);
 }
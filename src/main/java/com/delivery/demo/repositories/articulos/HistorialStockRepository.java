@@ -0,0 +1,12 @@
+package com.delivery.demo.repositories.articulos;
+
+import com.delivery.demo.entities.articulos.HistorialStock;
+import com.delivery.demo.repositories.BaseRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface HistorialStockRepository extends BaseRepository<HistorialStock, Long> {
+    public Page<HistorialStock> findByInsumoIdOrderByFechaMovimientoDescIdDesc(Long insumoId, Pageable pageable);
+}
@@ -0,0 +1,29 @@
+package com.delivery.demo.repositories.articulos;
+
+import com.delivery.demo.entities.articulos.ReservaStock;
+import com.delivery.demo.repositories.BaseRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface ReservaStockRepository extends BaseRepository<ReservaStock, Long> {
+    /* Locked, so a reservation can not be consumed and released at once: the second reader waits and finds none */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    public List<ReservaStock> findByOrdenIdIn(Collection<Long> ordenIds);
+
+    @Modifying
+    @Query("DELETE FROM ReservaStock r WHERE r.ordenId IN :ordenIds")
+    public int deleteByOrdenes(@Param("ordenIds") Collection<Long> ordenIds);
+
+    @Query("SELECT DISTINCT r.ordenId FROM ReservaStock r, Orden o JOIN o.estado e " +
+            "WHERE o.id = r.ordenId AND e.denominacion = :estado AND o.fecha < :limite")
+    public List<Long> getOrdenesVencidas(@Param("estado") String estado, @Param("limite") Date limite);
+}
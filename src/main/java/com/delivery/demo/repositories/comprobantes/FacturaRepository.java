@@ -2,8 +2,19 @@ package com.delivery.demo.repositories.comprobantes;
 
 import com.delivery.demo.entities.comprobantes.Factura;
 import com.delivery.demo.repositories.BaseRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Date;
+import java.util.List;
+
 @Repository
 public interface FacturaRepository extends BaseRepository<Factura, Long> {
+
+    /* Number of facturas in the given estado and the sum of their orden totals, as a single row */
+    @Query("SELECT COUNT(f), COALESCE(SUM(o.total), 0) FROM Factura f JOIN f.orden o JOIN f.estado e " +
+            "WHERE f.eliminado = false AND f.fecha BETWEEN :fechaInicio AND :fechaFin AND e.denominacion = :estado")
+    List<Object[]> getIngresos(@Param("fechaInicio") Date fechaInicio, @Param("fechaFin") Date fechaFin,
+                               @Param("estado") String estado);
 }
@@ -1,9 +1,19 @@
 package com.delivery.demo.repositories.comprobantes;
 
+import com.delivery.demo.dtos.OrdenActivaDTO;
 import com.delivery.demo.entities.comprobantes.Orden;
 import com.delivery.demo.repositories.BaseRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface OrdenRepository extends BaseRepository<Orden, Long> {
+    /* Compact state of the non deleted orders in the given states */
+    @Query("SELECT new com.delivery.demo.dtos.OrdenActivaDTO(o.id, o.fecha, e.denominacion, c.id, o.tiempoTotalPreparacion, o.horarioEntrega, o.delivery, o.formaPago) " +
+            "FROM Orden o JOIN o.estado e LEFT JOIN o.cliente c WHERE o.eliminado = false AND e.denominacion IN :estados")
+    List<OrdenActivaDTO> getOrdenesActivas(@Param("estados") Collection<String> estados);
 }
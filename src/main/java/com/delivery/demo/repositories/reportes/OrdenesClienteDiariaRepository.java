@@ -0,0 +1,20 @@
+package com.delivery.demo.repositories.reportes;
+
+import com.delivery.demo.entities.reportes.OrdenesClienteDiaria;
+import com.delivery.demo.repositories.BaseRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.util.List;
+
+@Repository
+public interface OrdenesClienteDiariaRepository extends BaseRepository<OrdenesClienteDiaria, Long> {
+
+    /* Email and number of billed orders of every cliente, read from the daily buckets */
+    @Query("SELECT u.email, SUM(v.ordenes) FROM OrdenesClienteDiaria v, Usuario u " +
+            "WHERE v.clienteId = u.id AND v.dia BETWEEN :fechaInicio AND :fechaFin " +
+            "GROUP BY u.id, u.email HAVING SUM(v.ordenes) > 0 ORDER BY SUM(v.ordenes) DESC")
+    List<Object[]> getOrdenes(@Param("fechaInicio") Date fechaInicio, @Param("fechaFin") Date fechaFin);
+}
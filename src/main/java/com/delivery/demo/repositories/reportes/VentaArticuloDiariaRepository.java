@@ -0,0 +1,27 @@
+package com.delivery.demo.repositories.reportes;
+
+import com.delivery.demo.entities.reportes.VentaArticuloDiaria;
+import com.delivery.demo.repositories.BaseRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.util.List;
+
+@Repository
+public interface VentaArticuloDiariaRepository extends BaseRepository<VentaArticuloDiaria, Long> {
+
+    /* Denominacion and quantity sold of the best selling insumos, read from the daily buckets */
+    @Query("SELECT a.denominacion, SUM(v.cantidad) FROM VentaArticuloDiaria v, ArticuloInsumo a " +
+            "WHERE v.manufacturado = false AND v.articuloId = a.id AND v.dia BETWEEN :fechaInicio AND :fechaFin " +
+            "GROUP BY a.id, a.denominacion HAVING SUM(v.cantidad) > 0 ORDER BY SUM(v.cantidad) DESC")
+    List<Object[]> getInsumosMasVendidos(@Param("fechaInicio") Date fechaInicio, @Param("fechaFin") Date fechaFin, Pageable pageable);
+
+    /* Denominacion and quantity sold of the best selling manufacturados, read from the daily buckets */
+    @Query("SELECT m.denominacion, SUM(v.cantidad) FROM VentaArticuloDiaria v, ArticuloManufacturado m " +
+            "WHERE v.manufacturado = true AND v.articuloId = m.id AND v.dia BETWEEN :fechaInicio AND :fechaFin " +
+            "GROUP BY m.id, m.denominacion HAVING SUM(v.cantidad) > 0 ORDER BY SUM(v.cantidad) DESC")
+    List<Object[]> getManufacturadosMasVendidos(@Param("fechaInicio") Date fechaInicio, @Param("fechaFin") Date fechaFin, Pageable pageable);
+}
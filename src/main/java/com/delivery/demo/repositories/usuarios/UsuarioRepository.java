@@ -6,14 +6,14 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.sql.Date;
 import java.util.List;
 
 @Repository
 public interface UsuarioRepository extends BaseRepository<Usuario, Long> {
-    @Query(
-            value = "SELECT usuario.email, COUNT(comprobante.id) AS \"ordenes\" FROM usuario LEFT JOIN comprobante ON comprobante.fk_cliente = usuario.id WHERE comprobante.fecha BETWEEN :fechaInicio AND :fechaFin GROUP BY usuario.id ORDER BY COUNT(comprobante.id) DESC",
-            nativeQuery = true
-    )
-    List<Object[]> getOrdenes(@Param("fechaInicio") Date fechaInicio, @Param("fechaFin") Date fechaFin);
+    /* Equality on the unique uid index, returns the usuario id and its role denomination */
+    @Query("SELECT u.id, r.denominacion FROM Usuario u JOIN u.rol r WHERE u.uid = :uid")
+    List<Object[]> resolverUid(@Param("uid") String uid);
+
+    @Query("SELECT COUNT(u) FROM Usuario u JOIN u.rol r WHERE u.eliminado = false AND r.denominacion = :rol")
+    long contarPorRol(@Param("rol") String rol);
 }
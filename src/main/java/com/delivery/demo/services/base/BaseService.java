@@ -10,6 +10,10 @@ public interface BaseService<E extends Base, ID extends Serializable> {
 
     public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception;
 
+    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction, boolean estimated) throws Exception;
+
+    public Map<String, Object> findAllSeek(String filter, String after, int size, String sortBy, String direction, boolean count) throws Exception;
+
     public List<E> findAll(String filtro) throws Exception;
 
     public E findById(ID entityId) throws Exception;
@@ -3,13 +3,27 @@ package com.delivery.demo.services.base;
 import com.delivery.demo.entities.Base;
 import com.delivery.demo.specifications.SearchSpecification;
 import com.delivery.demo.repositories.BaseRepository;
+import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.GenericTypeResolver;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
-
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CompoundSelection;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
 import java.io.Serializable;
 import java.sql.Timestamp;
 import java.util.*;
@@ -20,29 +34,79 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
     protected BaseRepository<E, ID> baseRepository;
     SearchSpecification<E> spec = new SearchSpecification<E>();
 
+    @PersistenceContext
+    protected EntityManager entityManager;
+
+    @Autowired
+    protected CountCache countCache;
+
+    @SuppressWarnings("unchecked")
+    protected final Class<E> domainClass =
+            (Class<E>) GenericTypeResolver.resolveTypeArguments(getClass(), BaseServiceImpl.class)[0];
+
     @Autowired
     public BaseServiceImpl(BaseRepository<E,ID> baseRepository){
         this.baseRepository = baseRepository;
     }
 
+    /*
+     * @desc Filter applied to the paged listings when a filter string is given. Services override it
+     * with the properties their entity can be searched by
+     * @return Specification<E> or null to ignore the filter
+     * */
+    protected Specification<E> filterSpecification(String filter) {
+        return null;
+    }
+
+    /*
+     * @desc Listing condition: not deleted and, when a filter string is given, the service filter over
+     * the trimmed filter, so the listing matches the count cached under the normalized filter
+     * */
+    protected Specification<E> listSpecification(String filter) {
+        Specification<E> listing = Specification.where(spec.isNotDeleted());
+
+        if (filter != null && !filter.trim().equals("")) {
+            listing = listing.and(Specification.where(filterSpecification(filter.trim())));
+        }
+
+        return listing;
+    }
+
     @Override
     public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
+        return findAll(filter, page, size, sortBy, direction, false);
+    }
+
+    /*
+     * @desc This method gets a page of the listing. The total count comes from the count cache, and is
+     * not queried at all when the page is the last one; with estimated set a stale count is accepted
+     * @return Map<String, Object> payload and length or new Exception()
+     * */
+    @Override
+    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction, boolean estimated) throws Exception {
         try {
-            Pageable pageable;
+            Sort sort;
             if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
+                sort = Sort.by(Sort.Direction.DESC, sortBy);
             } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
+                sort = Sort.by(Sort.Direction.ASC, sortBy);
             }
 
-            Specification<E> isNotDeleted = spec.isNotDeleted();
+            Specification<E> listing = listSpecification(filter);
+            int offset = page * size;
 
-            Page<E> entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            List<E> entities = entityPage.getContent();
+            List<?> entities = findListing(listing, sort, offset, size);
+
+            long length;
+            if (entities.size() < size && (offset == 0 || !entities.isEmpty())) {
+                length = offset + entities.size();
+            } else {
+                length = countCache.get(domainClass, filter, estimated, () -> baseRepository.count(listing));
+            }
 
             Map<String, Object> response = new HashMap<>();
             response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
+            response.put("length", length);
 
             return response;
         } catch (Exception e) {
@@ -50,6 +114,142 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
         }
     }
 
+    /*
+     * @desc This method gets a page of the listing positioned by a cursor instead of an offset: it
+     * continues right after the element the cursor points to, sorting by sortBy and then by id, so the
+     * database seeks the index instead of reading and discarding every previous row. The total count
+     * is only computed when requested
+     * @return Map<String, Object> payload, nextCursor (null on the last page) and length
+     * or new Exception()
+     * */
+    @Override
+    public Map<String, Object> findAllSeek(String filter, String after, int size, String sortBy, String direction, boolean count) throws Exception {
+        try {
+            this.validarOrdenSeek(sortBy);
+
+            boolean desc = direction.equals("desc");
+            Sort sort = desc
+                    ? Sort.by(Sort.Direction.DESC, sortBy, "id")
+                    : Sort.by(Sort.Direction.ASC, sortBy, "id");
+
+            Specification<E> listing = listSpecification(filter);
+            Specification<E> seek = listing;
+
+            if (after != null && !after.equals("")) {
+                Cursor cursor = Cursor.decode(after);
+                seek = listing.and(spec.after(sortBy, desc, cursor.getValue(), cursor.getId()));
+            }
+
+            List<?> entities = findListing(seek, sort, 0, size + 1);
+            String nextCursor = null;
+
+            if (entities.size() > size) {
+                entities = new ArrayList<>(entities.subList(0, size));
+                BeanWrapperImpl last = new BeanWrapperImpl(entities.get(size - 1));
+                nextCursor = Cursor.encode((Long) last.getPropertyValue("id"), last.getPropertyValue(sortBy));
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("payload", entities);
+            response.put("nextCursor", nextCursor);
+            if (count) {
+                response.put("length", countCache.get(domainClass, filter, false, () -> baseRepository.count(listing)));
+            }
+
+            return response;
+        } catch (Exception e) {
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    /*
+     * @desc Checks that a seek listing can be sorted by the property: it must reach, through single valued
+     * relations, a basic attribute whose values the cursor can carry as text (see SearchSpecification.isSeekable)
+     * @return new Exception() naming the property otherwise
+     * */
+    private void validarOrdenSeek(String sortBy) throws Exception {
+        ManagedType<?> tipo = entityManager.getMetamodel().managedType(domainClass);
+        String[] partes = sortBy.split("\\.");
+
+        for (int i = 0; i < partes.length; i++) {
+            Attribute<?, ?> atributo;
+            try {
+                atributo = tipo.getAttribute(partes[i]);
+            } catch (IllegalArgumentException e) {
+                throw new Exception("No se puede ordenar por " + sortBy);
+            }
+
+            boolean ultimo = i == partes.length - 1;
+            if (atributo.isCollection()
+                    || (ultimo && (atributo.isAssociation() || !SearchSpecification.isSeekable(atributo.getJavaType())))) {
+                throw new Exception("No se puede paginar por cursor ordenando por " + sortBy);
+            }
+
+            if (!ultimo) {
+                if (!atributo.isAssociation()) {
+                    throw new Exception("No se puede ordenar por " + sortBy);
+                }
+                tipo = entityManager.getMetamodel().managedType(atributo.getJavaType());
+            }
+        }
+    }
+
+    /*
+     * @desc Summary projection returned by the listings instead of the whole entity graph, built with
+     * builder.construct() over the root columns and the names of the related entities. Services of
+     * entities with heavy relations override it, the full entity is still served by findById
+     * @return CompoundSelection or null to list full entities
+     * */
+    protected CompoundSelection<?> summarySelection(Root<E> root, CriteriaBuilder builder) {
+        return null;
+    }
+
+    /*
+     * @desc Runs the specification with the given order and window, returning the summary projection
+     * of the service when it has one
+     * */
+    protected List<?> findListing(Specification<E> specification, Sort sort, int offset, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object> query = builder.createQuery(Object.class);
+        Root<E> root = query.from(domainClass);
+
+        CompoundSelection<?> summary = summarySelection(root, builder);
+        if (summary == null) {
+            return findSlice(specification, sort, offset, limit);
+        }
+
+        Predicate predicate = specification.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(summary).orderBy(QueryUtils.toOrders(sort, root, builder));
+
+        return entityManager.createQuery(query)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /*
+     * @desc Runs the specification with the given order and window without issuing a count query
+     * */
+    protected List<E> findSlice(Specification<E> specification, Sort sort, int offset, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<E> query = builder.createQuery(domainClass);
+        Root<E> root = query.from(domainClass);
+
+        Predicate predicate = specification.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(root).orderBy(QueryUtils.toOrders(sort, root, builder));
+
+        return entityManager.createQuery(query)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
     @Override
     public List<E> findAll(String filter) throws Exception {
         try{
@@ -87,6 +287,7 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
             entity.setUltimaActualizacion(timestamp);
 
             entity = baseRepository.save(entity);
+            countCache.invalidar(domainClass);
 
             return entity;
 
@@ -108,6 +309,7 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
             entity.setUltimaActualizacion(timestamp);
 
             entityUpdated = baseRepository.save(entity);
+            countCache.invalidar(domainClass);
 
             return entityUpdated;
 
@@ -130,6 +332,7 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
                 Timestamp timestamp = new Timestamp(System.currentTimeMillis());
                 toDelete.setUltimaActualizacion(timestamp);
                 toDelete = baseRepository.save(toDelete);
+                countCache.invalidar(domainClass);
                 return true;
             } else {
                 throw new Exception();
@@ -154,6 +357,7 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
                 toDelete.setEliminado(false);
                 toDelete.setUltimaActualizacion(timestamp);
                 toDelete = baseRepository.save(toDelete);
+                countCache.invalidar(domainClass);
                 return true;
             } else {
                 throw new Exception();
@@ -178,6 +382,7 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
                 Timestamp timestamp = new Timestamp(System.currentTimeMillis());
                 toHide.setUltimaActualizacion(timestamp);
                 toHide = baseRepository.save(toHide);
+                countCache.invalidar(domainClass);
                 return true;
 
             } else {
@@ -203,6 +408,7 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
                 toHide.setOculto(false);
                 toHide.setUltimaActualizacion(timestamp);
                 toHide = baseRepository.save(toHide);
+                countCache.invalidar(domainClass);
                 return true;
             } else {
                 throw new Exception();
@@ -215,4 +421,16 @@ public abstract class BaseServiceImpl<E extends Base, ID extends Serializable>
         }
     }
 
-}
\ No newline at end of file
+    /*
+     * @desc Marks the current transaction for rollback. Controllers catch every exception to build
+     * the error response, so without this a failed operation would commit its partial writes
+     * */
+    protected void rollbackOnly() {
+        try {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        } catch (NoTransactionException e) {
+            /* Not running inside a transaction, nothing to roll back */
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.delivery.demo.services.base;
+
+import com.delivery.demo.services.search.SearchIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+ * @desc Total counts of the paged listings keyed by entity and filter string, so flipping pages does
+ *       not repeat the same filtered COUNT every time. Filters are keyed trimmed, without accents and
+ *       lowercase, the way the searches compare them. Counts expire after a short TTL and are marked
+ *       stale whenever the service of the entity writes. In estimated mode a stale count is served as
+ *       is while it is recomputed in the background
+ * */
+@Component
+public class CountCache {
+
+    /* Distinct filter strings kept per entity, searches typed by users are not bounded */
+    private static final int MAX_FILTROS = 1000;
+
+    @Value("${delivery.count.ttl-ms:30000}")
+    long ttl;
+
+    private final Map<Class<?>, Conteos> entidades = new ConcurrentHashMap<>();
+
+    private final ExecutorService refresco = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "count-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /*
+     * @desc This method gets the count of a listing, computing it with the given query when it is
+     *       missing or, unless estimado is set, when it is stale
+     * @return long total elements of the listing
+     * */
+    public long get(Class<?> entidad, String filtro, boolean estimado, Supplier<Long> contar) {
+        Conteos conteos = entidades.computeIfAbsent(entidad, clase -> new Conteos());
+        String clave = filtro == null ? "" : SearchIndex.normalizar(filtro.trim());
+        Conteo conteo = conteos.valores.get(clave);
+
+        if (conteo != null && conteo.vigente(conteos.version.get())) {
+            return conteo.valor;
+        }
+
+        if (conteo != null && estimado) {
+            if (conteo.refrescando.compareAndSet(false, true)) {
+                refresco.execute(() -> calcular(conteos, clave, contar));
+            }
+            return conteo.valor;
+        }
+
+        return calcular(conteos, clave, contar);
+    }
+
+    /*
+     * @desc This method marks every count of an entity as stale. It is marked again once the current
+     *       transaction completes, so a count taken before the commit is not kept as current
+     * */
+    public void invalidar(Class<?> entidad) {
+        Conteos conteos = entidades.computeIfAbsent(entidad, clase -> new Conteos());
+        conteos.version.incrementAndGet();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    conteos.version.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        refresco.shutdownNow();
+    }
+
+    private long calcular(Conteos conteos, String clave, Supplier<Long> contar) {
+        long version = conteos.version.get();
+
+        try {
+            long valor = contar.get();
+            if (conteos.valores.size() >= MAX_FILTROS) {
+                conteos.valores.clear();
+            }
+            conteos.valores.put(clave, new Conteo(valor, version, System.currentTimeMillis() + ttl));
+            return valor;
+        } finally {
+            Conteo actual = conteos.valores.get(clave);
+            if (actual != null) {
+                actual.refrescando.set(false);
+            }
+        }
+    }
+
+    private static class Conteos {
+        private final Map<String, Conteo> valores = new ConcurrentHashMap<>();
+        private final AtomicLong version = new AtomicLong();
+    }
+
+    private static class Conteo {
+        private final long valor;
+        private final long version;
+        private final long vence;
+        private final AtomicBoolean refrescando = new AtomicBoolean();
+
+        Conteo(long valor, long version, long vence) {
+            this.valor = valor;
+            this.version = version;
+            this.vence = vence;
+        }
+
+        boolean vigente(long versionActual) {
+            return version == versionActual && System.currentTimeMillis() < vence;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.delivery.demo.services.base;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/*
+ * @desc Opaque position of a keyset (seek) listing: the id and the sort value of the last element
+ *       of the previous page. Dates are stored as epoch milliseconds and null values are omitted
+ * */
+@Getter
+@AllArgsConstructor
+public class Cursor {
+    private Long id;
+    private String value;
+
+    public static String encode(Long id, Object value) {
+        String raw = id.toString();
+
+        if (value instanceof Date) {
+            raw += "|" + ((Date) value).getTime();
+        } else if (value != null) {
+            raw += "|" + value.toString();
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Cursor decode(String cursor) throws Exception {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 2);
+
+            return new Cursor(Long.parseLong(parts[0]), parts.length > 1 ? parts[1] : null);
+        } catch (IllegalArgumentException e) {
+            throw new Exception("Cursor inválido");
+        }
+    }
+}
@@ -3,17 +3,16 @@ package com.delivery.demo.services.categoria;
 import com.delivery.demo.entities.articulos.Categoria;
 import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
+import com.delivery.demo.services.search.SearchIndex;
 import com.delivery.demo.specifications.SearchSpecification;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class CategoriaServiceImpl extends BaseServiceImpl<Categoria, Long> implements CategoriaService{
@@ -22,40 +21,22 @@ public class CategoriaServiceImpl extends BaseServiceImpl<Categoria, Long> imple
         super(baseRepository);
     }
 
+    @Autowired
+    SearchIndex searchIndex;
+
     SearchSpecification<Categoria> spec = new SearchSpecification<Categoria>();
 
+    /*
+     * @desc This method builds the filter applied to the paged listings
+     * @return Specification<Categoria> matching the filter string
+     * */
     @Override
-    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
-            }
-
-            Specification<Categoria> isNotDeleted = spec.isNotDeleted();
-
-            Page<Categoria> entityPage;
+    protected Specification<Categoria> filterSpecification(String filter) {
+        Set<Long> categorias = searchIndex.buscar(Categoria.class, filter, "denominacion");
 
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            } else {
-                Specification<Categoria> filterByDenominacion = spec.findByProperty("denominacion", filter);
+        Specification<Categoria> filterByDenominacion = spec.findByText(categorias, filter, "denominacion");
 
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByDenominacion)), pageable);
-            }
-
-            List<Categoria> entities = entityPage.getContent();
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
-
-            return response;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+        return Specification.where(filterByDenominacion);
     }
 
     @Override
@@ -67,9 +48,7 @@ public class CategoriaServiceImpl extends BaseServiceImpl<Categoria, Long> imple
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<Categoria> filterByDenominacion = spec.findByProperty("denominacion", filter);
-
-                return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByDenominacion)));
+                return baseRepository.findAll(Specification.where(isNotDeleted).and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
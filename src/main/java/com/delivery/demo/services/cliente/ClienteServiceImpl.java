@@ -1,5 +1,6 @@
 package com.delivery.demo.services.cliente;
 
+import com.delivery.demo.dtos.ClienteResumenDTO;
 import com.delivery.demo.entities.direccion.DireccionDelivery;
 import com.delivery.demo.entities.usuarios.Cliente;
 import com.delivery.demo.entities.usuarios.Rol;
@@ -7,15 +8,18 @@ import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.repositories.direccion.DireccionDeliveryRepository;
 import com.delivery.demo.repositories.usuarios.RolRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
+import com.delivery.demo.services.search.SearchIndex;
+import com.delivery.demo.services.usuario.UidResolver;
 import com.delivery.demo.specifications.SearchSpecification;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.criteria.CompoundSelection;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -32,46 +36,52 @@ public class ClienteServiceImpl extends BaseServiceImpl<Cliente, Long> implement
         super(baseRepository);
     }
 
-    SearchSpecification<Cliente> spec = new SearchSpecification<Cliente>();
-
-    @Override
-    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
-            }
+    @Autowired
+    SearchIndex searchIndex;
 
-            Specification<Cliente> isNotDeleted = spec.isNotDeleted();
+    @Autowired
+    UidResolver uidResolver;
 
-            Page<Cliente> entityPage;
+    SearchSpecification<Cliente> spec = new SearchSpecification<Cliente>();
 
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            } else {
-                Specification<Cliente> filterByUID = spec.findByUid(filter);
-                Specification<Cliente> filterByNombre = spec.findByProperty("nombre", filter);
-                Specification<Cliente> filterByApellido = spec.findByProperty("apellido", filter);
-                Specification<Cliente> filterByRol = spec.findByForeignAttribute("rol", "denominacion", filter);
-
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByUID)
-                        .or(filterByNombre)
-                        .or(filterByApellido)
-                        .or(filterByRol)), pageable);
-            }
+    /*
+     * @desc This method builds the filter applied to the paged listings
+     * @return Specification<Cliente> matching the filter string
+     * */
+    @Override
+    protected Specification<Cliente> filterSpecification(String filter) {
+        Set<Long> clientes = searchIndex.buscar(Cliente.class, filter, "nombre", "apellido");
+        Set<Long> roles = searchIndex.buscar(Rol.class, filter, "denominacion");
 
-            List<Cliente> entities = entityPage.getContent();
+        Specification<Cliente> filterByUID = spec.findByUid(filter);
+        Specification<Cliente> filterByNombreApellido = spec.findByText(clientes, filter, "nombre", "apellido");
+        Specification<Cliente> filterByRol = spec.findByForeignText("rol", roles, filter, "denominacion");
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
+        return Specification.where(filterByUID)
+                .or(filterByNombreApellido)
+                .or(filterByRol);
+    }
 
-            return response;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    /*
+     * @desc Cliente row of the listings: the personal data with the rol name, without the direcciones
+     * @return CompoundSelection<ClienteResumenDTO> with one ClienteResumenDTO per row
+     * */
+    @Override
+    protected CompoundSelection<ClienteResumenDTO> summarySelection(Root<Cliente> root, CriteriaBuilder builder) {
+        Join<Cliente, ?> rol = root.join("rol", JoinType.LEFT);
+
+        return builder.construct(ClienteResumenDTO.class,
+                root.get("id"),
+                root.get("ultimaActualizacion"),
+                root.get("oculto"),
+                root.get("eliminado"),
+                root.get("fechaAlta"),
+                root.get("nombre"),
+                root.get("apellido"),
+                root.get("telefono"),
+                root.get("email"),
+                root.get("uid"),
+                rol.get("denominacion"));
     }
 
     @Override
@@ -83,15 +93,7 @@ public class ClienteServiceImpl extends BaseServiceImpl<Cliente, Long> implement
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<Cliente> filterByUID = spec.findByUid(filter);
-                Specification<Cliente> filterByNombre = spec.findByProperty("nombre", filter);
-                Specification<Cliente> filterByApellido = spec.findByProperty("apellido", filter);
-                Specification<Cliente> filterByRol = spec.findByForeignAttribute("rol", "denominacion", filter);
-
-                return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByUID)
-                        .or(filterByNombre)
-                        .or(filterByApellido)
-                        .or(filterByRol)));
+                return baseRepository.findAll(Specification.where(isNotDeleted).and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
@@ -117,6 +119,7 @@ public class ClienteServiceImpl extends BaseServiceImpl<Cliente, Long> implement
             entity.setFechaAlta(timestamp);
 
             entity = baseRepository.save(entity);
+            countCache.invalidar(domainClass);
 
             return entity;
 
@@ -135,8 +138,7 @@ public class ClienteServiceImpl extends BaseServiceImpl<Cliente, Long> implement
     public Cliente addDireccion(DireccionDelivery direccion, String uid) throws Exception {
         try {
 
-            Specification<Cliente> filterByUID = spec.findByUid(uid);
-            Optional<Cliente> clienteOptional = baseRepository.findOne(Specification.where(filterByUID));
+            Optional<Cliente> clienteOptional = baseRepository.findById(uidResolver.getId(uid));
 
             Cliente cliente = clienteOptional.get();
 
@@ -162,8 +164,7 @@ public class ClienteServiceImpl extends BaseServiceImpl<Cliente, Long> implement
     public List<DireccionDelivery> getDirecciones(String uid) throws Exception {
         try {
 
-            Specification<Cliente> filterByUID = spec.findByUid(uid);
-            Optional<Cliente> clienteOptional = baseRepository.findOne(Specification.where(filterByUID));
+            Optional<Cliente> clienteOptional = baseRepository.findById(uidResolver.getId(uid));
 
             Cliente cliente = clienteOptional.get();
 
@@ -192,8 +193,7 @@ public class ClienteServiceImpl extends BaseServiceImpl<Cliente, Long> implement
     public Cliente findByUID(String uid) throws Exception {
         try {
 
-            Specification<Cliente> filterByUID = spec.findByUid(uid);
-            Optional<Cliente> entityOptional = baseRepository.findOne(Specification.where(filterByUID));
+            Optional<Cliente> entityOptional = baseRepository.findById(uidResolver.getId(uid));
 
             return entityOptional.get();
 
@@ -1,24 +1,30 @@
 package com.delivery.demo.services.empleado;
 
+import com.delivery.demo.dtos.EmpleadoResumenDTO;
 import com.delivery.demo.entities.usuarios.Empleado;
+import com.delivery.demo.entities.usuarios.Rol;
 import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.repositories.usuarios.EmpleadoRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
+import com.delivery.demo.services.search.SearchIndex;
+import com.delivery.demo.services.usuario.UidResolver;
 import com.delivery.demo.specifications.SearchSpecification;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Repository;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.criteria.CompoundSelection;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
 import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class EmpleadoServiceImpl extends BaseServiceImpl<Empleado, Long> implements EmpleadoService {
@@ -27,52 +33,56 @@ public class EmpleadoServiceImpl extends BaseServiceImpl<Empleado, Long> impleme
         super(baseRepository);
     }
 
+    @Autowired
+    SearchIndex searchIndex;
+
+    @Autowired
+    UidResolver uidResolver;
+
     SearchSpecification<Empleado> spec = new SearchSpecification<Empleado>();
 
     @Autowired
     EmpleadoRepository empleadoRepository;
 
+    /*
+     * @desc This method builds the filter applied to the paged listings
+     * @return Specification<Empleado> matching the filter string
+     * */
     @Override
-    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
-            }
+    protected Specification<Empleado> filterSpecification(String filter) {
+        Set<Long> empleados = searchIndex.buscar(Empleado.class, filter, "nombre", "apellido", "cuil");
+        Set<Long> roles = searchIndex.buscar(Rol.class, filter, "denominacion");
 
-            Specification<Empleado> isNotDeleted = spec.isNotDeleted();
-
-            Page<Empleado> entityPage;
+        Specification<Empleado> filterByUID = spec.findByUid(filter);
+        Specification<Empleado> filterByNombreApellidoCuil = spec.findByText(empleados, filter, "nombre", "apellido", "cuil");
+        Specification<Empleado> filterByRol = spec.findByForeignText("rol", roles, filter, "denominacion");
 
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            } else {
-                Specification<Empleado> filterByUID = spec.findByUid(filter);
-                Specification<Empleado> filterByNombre = spec.findByProperty("nombre", filter);
-                Specification<Empleado> filterByApellido = spec.findByProperty("apellido", filter);
-                Specification<Empleado> filterByCuil = spec.findByProperty("cuil", filter);
-                Specification<Empleado> filterByRol = spec.findByForeignAttribute("rol", "denominacion", filter);
-
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByUID)
-                        .or(filterByNombre)
-                        .or(filterByApellido)
-                        .or(filterByRol)
-                        .or(filterByCuil)
-                ), pageable);
-            }
-
-            List<Empleado> entities = entityPage.getContent();
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
+        return Specification.where(filterByUID)
+                .or(filterByNombreApellidoCuil)
+                .or(filterByRol);
+    }
 
-            return response;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    /*
+     * @desc Empleado row of the listings: the personal data with the rol name, without the direccion
+     * @return CompoundSelection<EmpleadoResumenDTO> with one EmpleadoResumenDTO per row
+     * */
+    @Override
+    protected CompoundSelection<EmpleadoResumenDTO> summarySelection(Root<Empleado> root, CriteriaBuilder builder) {
+        Join<Empleado, ?> rol = root.join("rol", JoinType.LEFT);
+
+        return builder.construct(EmpleadoResumenDTO.class,
+                root.get("id"),
+                root.get("ultimaActualizacion"),
+                root.get("oculto"),
+                root.get("eliminado"),
+                root.get("fechaAlta"),
+                root.get("nombre"),
+                root.get("apellido"),
+                root.get("telefono"),
+                root.get("email"),
+                root.get("uid"),
+                rol.get("denominacion"),
+                root.get("cuil"));
     }
 
     @Override
@@ -84,19 +94,7 @@ public class EmpleadoServiceImpl extends BaseServiceImpl<Empleado, Long> impleme
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<Empleado> filterByUID = spec.findByUid(filter);
-                Specification<Empleado> filterByNombre = spec.findByProperty("nombre", filter);
-                Specification<Empleado> filterByApellido = spec.findByProperty("apellido", filter);
-                Specification<Empleado> filterByCuil = spec.findByProperty("cuil", filter);
-                Specification<Empleado> filterByRol = spec.findByForeignAttribute("rol", "denominacion", filter);
-
-                return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByUID)
-                        .or(filterByNombre)
-                        .or(filterByApellido)
-                        .or(filterByCuil)
-                        .or(filterByRol)
-                        .or(filterByCuil)
-                ));
+                return baseRepository.findAll(Specification.where(isNotDeleted).and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
@@ -112,8 +110,7 @@ public class EmpleadoServiceImpl extends BaseServiceImpl<Empleado, Long> impleme
     public Empleado findByUID(String uid) throws Exception {
         try {
 
-            Specification<Empleado> filterByUID = spec.findByUid(uid);
-            Optional<Empleado> entityOptional = baseRepository.findOne(Specification.where(filterByUID));
+            Optional<Empleado> entityOptional = baseRepository.findById(uidResolver.getId(uid));
 
             return entityOptional.get();
 
@@ -146,6 +143,7 @@ public class EmpleadoServiceImpl extends BaseServiceImpl<Empleado, Long> impleme
             entity.setFechaAlta(timestamp);
 
             entity = baseRepository.save(entity);
+            countCache.invalidar(domainClass);
 
             return entity;
 
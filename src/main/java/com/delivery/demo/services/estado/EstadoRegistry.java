@@ -0,0 +1,99 @@
+package com.delivery.demo.services.estado;
+
+import com.delivery.demo.entities.comprobantes.Estado;
+import com.delivery.demo.entities.comprobantes.TipoEstado;
+import com.delivery.demo.repositories.comprobantes.EstadoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+@Component
+public class EstadoRegistry {
+
+    @Autowired
+    EstadoRepository estadoRepository;
+
+    private volatile Map<String, Estado> estados = Collections.emptyMap();
+
+    private volatile Map<Long, String> denominaciones = Collections.emptyMap();
+
+    /*
+     * @desc This method loads every state from the database and replaces the registry,
+     *       keyed by its exact denomination. Non deleted states win over deleted duplicates
+     * */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void refresh() {
+        Map<String, Estado> aux = new HashMap<>();
+        Map<Long, String> auxDenominaciones = new HashMap<>();
+
+        for (Estado estado : estadoRepository.findAll()) {
+            if (estado.getDenominacion() == null) {
+                continue;
+            }
+
+            String key = normalizar(estado.getDenominacion());
+            auxDenominaciones.put(estado.getId(), key);
+            Estado actual = aux.get(key);
+
+            if (actual == null || (actual.isEliminado() && !estado.isEliminado())) {
+                aux.put(key, estado);
+            }
+        }
+
+        estados = Collections.unmodifiableMap(aux);
+        denominaciones = Collections.unmodifiableMap(auxDenominaciones);
+    }
+
+    /*
+     * @desc This method finds the states whose denomination contains the text, deleted duplicates
+     *       included since old comprobantes may still point to them
+     * @return Set<Long> ids of the matching states
+     * */
+    public Set<Long> buscar(String texto) {
+        if (denominaciones.isEmpty()) {
+            refresh();
+        }
+
+        String buscado = normalizar(texto);
+        Set<Long> ids = new HashSet<>();
+
+        for (Map.Entry<Long, String> entry : denominaciones.entrySet()) {
+            if (entry.getValue().contains(buscado)) {
+                ids.add(entry.getKey());
+            }
+        }
+
+        return ids;
+    }
+
+    /*
+     * @desc This method gets a state from the registry. If it is missing (a row inserted
+     *       outside the API) the registry is reloaded once before failing
+     * @return Estado estado or new Exception()
+     * */
+    public Estado get(TipoEstado tipo) throws Exception {
+        Estado estado = estados.get(tipo.getDenominacion());
+
+        if (estado == null) {
+            refresh();
+            estado = estados.get(tipo.getDenominacion());
+        }
+
+        if (estado == null) {
+            throw new Exception("No existe el estado " + tipo.getDenominacion());
+        }
+
+        return estado;
+    }
+
+    private String normalizar(String denominacion) {
+        return denominacion.trim().toLowerCase();
+    }
+}
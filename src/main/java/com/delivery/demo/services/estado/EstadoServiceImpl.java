@@ -5,6 +5,7 @@ import com.delivery.demo.entities.usuarios.Empleado;
 import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
 import com.delivery.demo.specifications.SearchSpecification;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
@@ -13,8 +14,44 @@ import java.util.Optional;
 @Service
 public class EstadoServiceImpl extends BaseServiceImpl<Estado, Long> implements EstadoService {
 
+    @Autowired
+    EstadoRegistry estadoRegistry;
+
     public EstadoServiceImpl(BaseRepository<Estado, Long> baseRepository) {
         super(baseRepository);
     }
 
+    /*
+     * Every mutation of the estado table reloads the in-memory registry used by
+     * orders and invoices to resolve their states
+     * */
+
+    @Override
+    public Estado save(Estado entity) throws Exception {
+        Estado estado = super.save(entity);
+        estadoRegistry.refresh();
+        return estado;
+    }
+
+    @Override
+    public Estado update(Long entityId, Estado entity) throws Exception {
+        Estado estado = super.update(entityId, entity);
+        estadoRegistry.refresh();
+        return estado;
+    }
+
+    @Override
+    public boolean delete(Long entityId) throws Exception {
+        boolean deleted = super.delete(entityId);
+        estadoRegistry.refresh();
+        return deleted;
+    }
+
+    @Override
+    public boolean undoDelete(Long entityId) throws Exception {
+        boolean restored = super.undoDelete(entityId);
+        estadoRegistry.refresh();
+        return restored;
+    }
+
 }
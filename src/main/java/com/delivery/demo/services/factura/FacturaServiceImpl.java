@@ -1,25 +1,35 @@
 package com.delivery.demo.services.factura;
 
+import com.delivery.demo.dtos.FacturaResumenDTO;
 import com.delivery.demo.entities.DatosEmpresa;
 import com.delivery.demo.entities.comprobantes.Estado;
 import com.delivery.demo.entities.comprobantes.Factura;
 import com.delivery.demo.entities.comprobantes.Orden;
+import com.delivery.demo.entities.comprobantes.TipoEstado;
 import com.delivery.demo.entities.usuarios.Empleado;
+import com.delivery.demo.events.OrdenEvent;
 import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.repositories.DatosEmpresaRepository;
-import com.delivery.demo.repositories.comprobantes.EstadoRepository;
 import com.delivery.demo.repositories.comprobantes.OrdenRepository;
 import com.delivery.demo.repositories.usuarios.EmpleadoRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
+import com.delivery.demo.services.estado.EstadoRegistry;
+import com.delivery.demo.services.reportes.ReportCache;
+import com.delivery.demo.services.reportes.VentasRollup;
+import com.delivery.demo.services.reserva.ReservaStockService;
+import com.delivery.demo.services.search.SearchIndex;
+import com.delivery.demo.services.usuario.UidResolver;
 import com.delivery.demo.specifications.SearchSpecification;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.criteria.CompoundSelection;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -27,7 +37,13 @@ import java.util.*;
 public class FacturaServiceImpl extends BaseServiceImpl<Factura, Long> implements FacturaService {
 
     @Autowired
-    EstadoRepository estadoRepository;
+    EstadoRegistry estadoRegistry;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    ReservaStockService reservaStockService;
 
     @Autowired
     EmpleadoRepository empleadoRepository;
@@ -38,54 +54,66 @@ public class FacturaServiceImpl extends BaseServiceImpl<Factura, Long> implement
     @Autowired
     OrdenRepository ordenRepository;
 
+    @Autowired
+    VentasRollup ventasRollup;
+
+    @Autowired
+    ReportCache reportCache;
+
     public FacturaServiceImpl(BaseRepository<Factura, Long> baseRepository) {
         super(baseRepository);
     }
 
-    SearchSpecification<Factura> spec = new SearchSpecification<Factura>();
-
-    @Override
-    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
-            }
-
-            Specification<Factura> isNotDeleted = spec.isNotDeleted();
-
-            Page<Factura> entityPage;
+    @Autowired
+    SearchIndex searchIndex;
 
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            } else {
-                Specification<Factura> filterByEstado = spec.findByEstado(filter);
-                Specification<Factura> filterById = spec.findByProperty("id", filter);
-                Specification<Factura> filterByFormaPago = spec.findByProperty("formaPago", filter);
-                Specification<Factura> filterByNombreCajero = spec.findByForeignAttribute("cajero", "nombre", filter);
-                Specification<Factura> filterByApellidoCajero = spec.findByForeignAttribute("cajero", "apellido", filter);
-
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted)
-                        .and(Specification.where(filterByEstado)
-                                .or(filterById)
-                                .or(filterByFormaPago)
-                                .or(filterByNombreCajero)
-                                .or(filterByApellidoCajero)
-                        ), pageable);
-            }
+    @Autowired
+    UidResolver uidResolver;
 
-            List<Factura> entities = entityPage.getContent();
+    SearchSpecification<Factura> spec = new SearchSpecification<Factura>();
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
+    /*
+     * @desc This method builds the filter applied to the paged listings
+     * @return Specification<Factura> matching the filter string
+     * */
+    @Override
+    protected Specification<Factura> filterSpecification(String filter) {
+        Set<Long> cajeros = searchIndex.buscar(Empleado.class, filter, "nombre", "apellido");
+
+        Specification<Factura> filterByEstado = spec.findByForeignIds("estado", estadoRegistry.buscar(filter));
+        Specification<Factura> filterById = spec.findById(filter);
+        Specification<Factura> filterByFormaPago = spec.findByPropertyEquals("formaPago", filter);
+        Specification<Factura> filterByCajero = spec.findByForeignText("cajero", cajeros, filter, "nombre", "apellido");
+
+        return Specification.where(filterByEstado)
+                .or(filterById)
+                .or(filterByFormaPago)
+                .or(filterByCajero);
+    }
 
-            return response;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    /*
+     * @desc Factura row of the listings: totals, estado and cajero name, with the orden only by id
+     * @return CompoundSelection<FacturaResumenDTO> with one FacturaResumenDTO per row
+     * */
+    @Override
+    protected CompoundSelection<FacturaResumenDTO> summarySelection(Root<Factura> root, CriteriaBuilder builder) {
+        Join<Factura, ?> estado = root.join("estado", JoinType.LEFT);
+        Join<Factura, ?> orden = root.join("orden", JoinType.LEFT);
+        Join<Factura, ?> cajero = root.join("cajero", JoinType.LEFT);
+
+        return builder.construct(FacturaResumenDTO.class,
+                root.get("id"),
+                root.get("ultimaActualizacion"),
+                root.get("oculto"),
+                root.get("eliminado"),
+                root.get("fecha"),
+                root.get("formaPago"),
+                root.get("montoDescuento"),
+                root.get("total"),
+                estado.get("denominacion"),
+                orden.get("id"),
+                cajero.get("nombre"),
+                cajero.get("apellido"));
     }
 
     @Override
@@ -97,18 +125,7 @@ public class FacturaServiceImpl extends BaseServiceImpl<Factura, Long> implement
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<Factura> filterByEstado = spec.findByForeignAttribute("estado", "denominacion", filter);
-                Specification<Factura> filterById = spec.findByProperty("id", filter);
-                Specification<Factura> filterByFormaPago = spec.findByProperty("formaPago", filter);
-                Specification<Factura> filterByNombreCajero = spec.findByForeignAttribute("cajero", "nombre", filter);
-                Specification<Factura> filterByApellidoCajero = spec.findByForeignAttribute("cajero", "apellido", filter);
-
-                return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByEstado)
-                        .or(filterById)
-                        .or(filterByFormaPago)
-                        .or(filterByNombreCajero)
-                        .or(filterByApellidoCajero)
-                ));
+                return baseRepository.findAll(Specification.where(isNotDeleted).and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
@@ -139,15 +156,10 @@ public class FacturaServiceImpl extends BaseServiceImpl<Factura, Long> implement
             factura.setUltimaActualizacion(timestamp);
 
             /* ESTADO */
-            SearchSpecification<Estado> specEstado = new SearchSpecification<Estado>();
-            Specification<Estado> filterByDenominacion = specEstado.findByProperty("denominacion", "pagado");
-            Optional<Estado> estado = estadoRepository.findOne(Specification.where(filterByDenominacion));
-            factura.setEstado(estado.get());
+            factura.setEstado(estadoRegistry.get(TipoEstado.PAGADO));
 
             /* CAJERO */
-            SearchSpecification<Empleado> specEmpleado = new SearchSpecification<Empleado>();
-            Specification<Empleado> filterByUID = specEmpleado.findByUid(cajeroUid);
-            Optional<Empleado> empleado = empleadoRepository.findOne(Specification.where(filterByUID));
+            Optional<Empleado> empleado = empleadoRepository.findById(uidResolver.getId(cajeroUid));
             factura.setCajero(empleado.get());
 
             /* DATOS EMPRESA */
@@ -155,20 +167,31 @@ public class FacturaServiceImpl extends BaseServiceImpl<Factura, Long> implement
             factura.setDatosEmpresa(datosEmpresa.get());
 
             /* ACTUALIZAR ESTADO ORDEN */
-            filterByDenominacion = specEstado.findByProperty("denominacion", "entregado");
-            Optional<Estado> estadoOrden = estadoRepository.findOne(Specification.where(filterByDenominacion));
-            orden.setEstado(estadoOrden.get());
+            String estadoAnterior = orden.getEstado() != null ? orden.getEstado().getDenominacion() : null;
+            orden.setEstado(estadoRegistry.get(TipoEstado.ENTREGADO));
+
+            if (TipoEstado.PENDIENTE.es(estadoAnterior)) {
+                reservaStockService.consumir(orden.getId());
+            }
 
             orden = ordenRepository.save(orden);
+            countCache.invalidar(Orden.class);
+            eventPublisher.publishEvent(OrdenEvent.of(orden, estadoAnterior));
 
             factura.setOrden(orden);
 
             factura = baseRepository.save(factura);
+            countCache.invalidar(domainClass);
+
+            ventasRollup.acumular(orden, 1);
+            reportCache.invalidar(orden.getFecha());
+            reportCache.invalidar(factura.getFecha());
 
             return factura;
 
         } catch (Exception e) {
 
+            this.rollbackOnly();
             throw new Exception(e.getMessage());
 
         }
@@ -203,15 +226,14 @@ public class FacturaServiceImpl extends BaseServiceImpl<Factura, Long> implement
 
                 Factura facturaAnulada = entityOptional.get();
 
-                SearchSpecification<Estado> specEstado = new SearchSpecification<Estado>();
-                Specification<Estado> filterByDenominacion = specEstado.findByProperty("denominacion", "anulado");
-                Optional<Estado> estado = estadoRepository.findOne(Specification.where(filterByDenominacion));
+                this.acumular(facturaAnulada, -1);
 
-                facturaAnulada.setEstado(estado.get());
+                facturaAnulada.setEstado(estadoRegistry.get(TipoEstado.ANULADO));
 
                 Timestamp timestamp = new Timestamp(System.currentTimeMillis());
                 facturaAnulada.setUltimaActualizacion(timestamp);
                 facturaAnulada = baseRepository.save(facturaAnulada);
+                countCache.invalidar(domainClass);
 
                 return true;
 
@@ -225,4 +247,62 @@ public class FacturaServiceImpl extends BaseServiceImpl<Factura, Long> implement
 
         }
     }
+
+    /*
+     * @desc This method soft-deletes an invoice, subtracting it from the sales rollups if it was counted
+     * @return True if the invoice was deleted or new Exception()
+     * */
+    @Override
+    public boolean delete(Long entityId) throws Exception {
+        try {
+
+            Optional<Factura> facturaOpcional = baseRepository.findById(entityId);
+            if (facturaOpcional.isPresent()) {
+                this.acumular(facturaOpcional.get(), -1);
+            }
+
+            return super.delete(entityId);
+
+        } catch (Exception e) {
+
+            this.rollbackOnly();
+            throw new Exception(e.getMessage());
+
+        }
+    }
+
+    /*
+     * @desc This method restores a soft-deleted invoice, adding it back to the sales rollups if it is paid
+     * @return True if the invoice was restored or new Exception()
+     * */
+    @Override
+    public boolean undoDelete(Long entityId) throws Exception {
+        try {
+
+            boolean restaurada = super.undoDelete(entityId);
+            this.acumular(baseRepository.findById(entityId).get(), 1);
+
+            return restaurada;
+
+        } catch (Exception e) {
+
+            this.rollbackOnly();
+            throw new Exception(e.getMessage());
+
+        }
+    }
+
+    /*
+     * @desc This method adds (signo 1) or subtracts (signo -1) an invoice to the sales rollups. Only a
+     *       paid, non deleted invoice is counted there, as VentasRollup.reconstruir does
+     * */
+    private void acumular(Factura factura, int signo) {
+        if (factura.isEliminado() || factura.getOrden() == null || !TipoEstado.PAGADO.es(factura.getEstado())) {
+            return;
+        }
+
+        ventasRollup.acumular(factura.getOrden(), signo);
+        reportCache.invalidar(factura.getOrden().getFecha());
+        reportCache.invalidar(factura.getFecha());
+    }
 }
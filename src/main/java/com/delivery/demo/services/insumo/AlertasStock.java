@@ -0,0 +1,119 @@
+package com.delivery.demo.services.insumo;
+
+import com.delivery.demo.dtos.AlertaStockDTO;
+import com.delivery.demo.entities.Base;
+import com.delivery.demo.events.AlertaStockEvent;
+import com.delivery.demo.events.StockEvent;
+import com.delivery.demo.repositories.articulos.ArticuloInsumoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/*
+ * @desc In-memory set of the supplies below their stockMinimo. Every committed stock change, the
+ *       StockEvent of the JDBC batches and the JPA writes of the articles, re-reads the level of only the
+ *       supplies it touched and publishes an AlertaStockEvent when one crosses its minimum, either way.
+ *       The set is loaded on startup and periodically reloaded, which also reports any crossing missed
+ * */
+@Component
+public class AlertasStock {
+
+    @Autowired
+    ArticuloInsumoRepository insumoRepository;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    private final Map<Long, AlertaStockDTO> bajoMinimo = new TreeMap<>();
+
+    /*
+     * @desc This method replaces the set with the supplies below their minimum stored in the database
+     * */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${delivery.stock.alertas-reconciliacion-ms:300000}", initialDelayString = "${delivery.stock.alertas-reconciliacion-ms:300000}")
+    public synchronized void cargar() {
+        Map<Long, AlertaStockDTO> anteriores = new HashMap<>(bajoMinimo);
+        bajoMinimo.clear();
+
+        for (AlertaStockDTO insumo : insumoRepository.getBajoMinimo()) {
+            bajoMinimo.put(insumo.getInsumoId(), insumo);
+            if (anteriores.remove(insumo.getInsumoId()) == null) {
+                eventPublisher.publishEvent(new AlertaStockEvent(insumo, true));
+            }
+        }
+
+        for (AlertaStockDTO insumo : anteriores.values()) {
+            eventPublisher.publishEvent(new AlertaStockEvent(insumo, false));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockEvent(StockEvent event) {
+        this.verificar(event.getInsumoIds());
+    }
+
+    /*
+     * @desc This method checks a supply written through JPA once the transaction commits
+     * */
+    public void modificado(Base entidad) {
+        Long id = entidad.getId();
+        if (id == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    verificar(Collections.singleton(id));
+                }
+            });
+        } else {
+            this.verificar(Collections.singleton(id));
+        }
+    }
+
+    /*
+     * @desc This method re-reads the stock of the given supplies and publishes their crossings
+     * */
+    public synchronized void verificar(Collection<Long> insumoIds) {
+        if (insumoIds.isEmpty()) {
+            return;
+        }
+
+        Set<Long> sinLeer = new HashSet<>(insumoIds);
+
+        for (AlertaStockDTO insumo : insumoRepository.getNivelesStock(insumoIds)) {
+            sinLeer.remove(insumo.getInsumoId());
+
+            if (insumo.bajoMinimo()) {
+                if (bajoMinimo.put(insumo.getInsumoId(), insumo) == null) {
+                    eventPublisher.publishEvent(new AlertaStockEvent(insumo, true));
+                }
+            } else if (bajoMinimo.remove(insumo.getInsumoId()) != null) {
+                eventPublisher.publishEvent(new AlertaStockEvent(insumo, false));
+            }
+        }
+
+        /* Deleted supplies leave the set without an event */
+        for (Long id : sinLeer) {
+            bajoMinimo.remove(id);
+        }
+    }
+
+    /*
+     * @desc This method gets the supplies currently below their minimum
+     * @return List<AlertaStockDTO> insumos ordered by id
+     * */
+    public synchronized List<AlertaStockDTO> getBajoMinimo() {
+        return new ArrayList<>(bajoMinimo.values());
+    }
+}
@@ -0,0 +1,26 @@
+package com.delivery.demo.services.insumo;
+
+import com.delivery.demo.entities.Base;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/*
+ * @desc JPA listener of the supplies, tells AlertasStock about stock or minimum changes written through JPA
+ * */
+@Component
+public class AlertasStockListener {
+
+    @Autowired
+    AlertasStock alertasStock;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void modificado(Base entidad) {
+        alertasStock.modificado(entidad);
+    }
+}
@@ -1,8 +1,12 @@
 package com.delivery.demo.services.insumo;
 
+import com.delivery.demo.dtos.IngresoStockDTO;
 import com.delivery.demo.entities.articulos.ArticuloInsumo;
+import com.delivery.demo.entities.articulos.HistorialStock;
 import com.delivery.demo.services.base.BaseService;
+import org.springframework.data.domain.Page;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -10,5 +14,7 @@ public interface ArticuloInsumoService extends BaseService<ArticuloInsumo, Long>
     public ArticuloInsumo addStock(Long articuloId, double cantidad) throws Exception;
     public ArticuloInsumo removeStock(Long articuloId, double cantidad) throws Exception;
     public List<ArticuloInsumo> getBebidas(String filter) throws Exception;
+    public Page<HistorialStock> getHistorial(Long articuloId, int page, int size) throws Exception;
+    public IngresoStockDTO ingresarStock(InputStream contenido, String contentType) throws Exception;
 
 }
@@ -1,17 +1,37 @@
 package com.delivery.demo.services.insumo;
 
+import com.delivery.demo.dtos.ArticuloInsumoResumenDTO;
+import com.delivery.demo.dtos.IngresoStockDTO;
 import com.delivery.demo.entities.articulos.ArticuloInsumo;
 import com.delivery.demo.entities.articulos.HistorialStock;
+import com.delivery.demo.entities.articulos.Rubro;
 import com.delivery.demo.repositories.BaseRepository;
+import com.delivery.demo.repositories.articulos.ArticuloInsumoRepository;
+import com.delivery.demo.repositories.articulos.HistorialStockRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
+import com.delivery.demo.services.search.SearchIndex;
 import com.delivery.demo.specifications.SearchSpecification;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.criteria.CompoundSelection;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -22,47 +42,76 @@ public class ArticuloInsumoServiceImpl extends BaseServiceImpl<ArticuloInsumo, L
         super(baseRepository);
     }
 
+    @Autowired
+    SearchIndex searchIndex;
+
+    @Autowired
+    ArticuloInsumoRepository insumoRepository;
+
+    @Autowired
+    HistorialStockRepository historialStockRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    /* UTF-8 byte order mark some spreadsheets write at the start of a CSV */
+    private static final String BOM = "\uFEFF";
+
     SearchSpecification<ArticuloInsumo> spec = new SearchSpecification<ArticuloInsumo>();
     Specification<ArticuloInsumo> isNotDeleted = spec.isNotDeleted();
 
+    /*
+     * @desc This method builds the filter applied to the paged listings
+     * @return Specification<ArticuloInsumo> matching the filter string
+     * */
     @Override
-    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
-            }
+    protected Specification<ArticuloInsumo> filterSpecification(String filter) {
+        Set<Long> articulos = searchIndex.buscar(ArticuloInsumo.class, filter, "denominacion", "descripcion");
 
-            Page<ArticuloInsumo> entityPage;
+        Specification<ArticuloInsumo> filterByDenominacionDescripcion = spec.findByText(articulos, filter, "denominacion", "descripcion");
 
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            } else {
-                Specification<ArticuloInsumo> filterByDenominacion = spec.findByProperty("denominacion", filter);
-                Specification<ArticuloInsumo> filterByDescripcion = spec.findByProperty("descripcion", filter);
-                Specification<ArticuloInsumo> filterByRubro = spec.findByForeignAttribute("rubro", "denominacion", filter);
-                Specification<ArticuloInsumo> filterByRubroPadre = spec.rubroPadre(filter);
+        return Specification.where(filterByDenominacionDescripcion)
+                .or(this.filterByRubro(filter));
+    }
 
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted)
-                        .and(Specification.where(filterByDenominacion)
-                                .or(filterByDescripcion)
-                                .or(filterByRubro)
-                                .or(filterByRubroPadre))
-                        , pageable);
-            }
+    /*
+     * @desc Insumo row of the listings: the article and its stock levels with the rubro name, without the
+     * stock history
+     * @return CompoundSelection<ArticuloInsumoResumenDTO> with one ArticuloInsumoResumenDTO per row
+     * */
+    @Override
+    protected CompoundSelection<ArticuloInsumoResumenDTO> summarySelection(Root<ArticuloInsumo> root, CriteriaBuilder builder) {
+        Join<ArticuloInsumo, ?> rubro = root.join("rubro", JoinType.LEFT);
+
+        return builder.construct(ArticuloInsumoResumenDTO.class,
+                root.get("id"),
+                root.get("ultimaActualizacion"),
+                root.get("oculto"),
+                root.get("eliminado"),
+                root.get("esInsumo"),
+                root.get("denominacion"),
+                root.get("descripcion"),
+                root.get("imagen"),
+                root.get("costo"),
+                root.get("precio"),
+                root.get("stockActual"),
+                root.get("stockReservado"),
+                root.get("stockMaximo"),
+                root.get("stockMinimo"),
+                root.get("unidadMedida"),
+                rubro.get("denominacion"));
+    }
 
-            List<ArticuloInsumo> entities = entityPage.getContent();
+    /*
+     * @desc Supplies whose rubro or parent rubro name contains the filter
+     * */
+    private Specification<ArticuloInsumo> filterByRubro(String filter) {
+        Set<Long> rubros = searchIndex.buscar(Rubro.class, filter, "denominacion");
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
+        Specification<ArticuloInsumo> filterByRubro = spec.findByForeignText("rubro", rubros, filter, "denominacion");
+        Specification<ArticuloInsumo> filterByRubroPadre = spec.findByForeignText("rubro.rubroPadre", rubros, filter, "denominacion");
 
-            return response;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+        return Specification.where(filterByRubro).or(filterByRubroPadre);
     }
 
     @Override
@@ -72,10 +121,7 @@ public class ArticuloInsumoServiceImpl extends BaseServiceImpl<ArticuloInsumo, L
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<ArticuloInsumo> filterByRubro = spec.findByForeignAttribute("rubro", "denominacion", filter);
-                Specification<ArticuloInsumo> filterByRubroPadre = spec.rubroPadre(filter);
-
-                return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByRubro).or(filterByRubroPadre)));
+                return baseRepository.findAll(Specification.where(isNotDeleted).and(this.filterByRubro(filter)));
             }
 
         } catch (Exception e){
@@ -84,8 +130,8 @@ public class ArticuloInsumoServiceImpl extends BaseServiceImpl<ArticuloInsumo, L
     }
 
     /*
-     * @desc This method saves a supply article and if stockActual is greater than 0 creates a new
-     * HistorialStock and add it to the article historialStock
+     * @desc This method saves a supply article and if stockActual is greater than 0 appends a HistorialStock
+     * for it to the ledger
      * @return ArticuloInsumo articuloInsumo or new Exception()
      * */
     @Override
@@ -95,12 +141,13 @@ public class ArticuloInsumoServiceImpl extends BaseServiceImpl<ArticuloInsumo, L
             Timestamp timestamp = new Timestamp(System.currentTimeMillis());
             entity.setUltimaActualizacion(timestamp);
 
+            entity = baseRepository.save(entity);
+            countCache.invalidar(domainClass);
+
             if(entity.getStockActual() > 0){
-                entity.getHistorialStock().add(new HistorialStock(entity.getStockActual(), timestamp, true));
+                insumoRepository.registrarMovimientos(Collections.singletonMap(entity.getId(), entity.getStockActual()), timestamp, true);
             }
 
-            entity = baseRepository.save(entity);
-
             return entity;
 
         } catch (Exception e) {
@@ -111,58 +158,247 @@ public class ArticuloInsumoServiceImpl extends BaseServiceImpl<ArticuloInsumo, L
     }
 
     /*
-     * @desc This method add stock to a supply article and creates a new HistorialStock for it
+     * @desc This method updates a supply article. Its stock only changes through the stock operations, so
+     * the persisted stockActual and stockReservado are kept and returned instead of the ones sent
      * @return ArticuloInsumo articuloInsumo or new Exception()
      * */
     @Override
-    public ArticuloInsumo addStock(Long articuloId, double cantidad) throws Exception {
+    public ArticuloInsumo update(Long entityId, ArticuloInsumo entity) throws Exception {
         try {
-            Optional<ArticuloInsumo> articuloInsumoOptional = baseRepository.findById(articuloId);
-            ArticuloInsumo articulo = articuloInsumoOptional.get();
 
-            articulo.setStockActual(articulo.getStockActual() + cantidad);
+            ArticuloInsumo actual = baseRepository.findById(entityId).get();
+            entity.setStockActual(actual.getStockActual());
+            entity.setStockReservado(actual.getStockReservado());
+
+            return super.update(entityId, entity);
+
+        } catch (Exception e) {
+
+            throw new Exception(e.getMessage());
+
+        }
+    }
+
+    /*
+     * @desc This method add stock to a supply article and appends a HistorialStock for it to the ledger,
+     * without loading the article history
+     * @return ArticuloInsumo articuloInsumo or new Exception()
+     * */
+    @Override
+    public ArticuloInsumo addStock(Long articuloId, double cantidad) throws Exception {
+        try {
 
             Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-            articulo.setUltimaActualizacion(timestamp);
-            articulo.getHistorialStock().add(new HistorialStock(cantidad, timestamp, true));
+            Map<Long, Double> cantidades = Collections.singletonMap(articuloId, cantidad);
 
-            articulo = baseRepository.save(articulo);
-            return articulo;
+            if (!insumoRepository.agregarStock(cantidades, timestamp).isEmpty()) {
+                throw new Exception("No existe el insumo " + articuloId);
+            }
+            insumoRepository.registrarMovimientos(cantidades, timestamp, true);
+
+            return baseRepository.findById(articuloId).get();
 
         } catch (Exception e){
+            this.rollbackOnly();
             throw new Exception(e.getMessage());
         }
     }
 
     /*
-     * @desc This method removes stock to a supply article and creates a new HistorialStock for it
+     * @desc This method removes stock to a supply article and appends a HistorialStock for it to the ledger.
+     * Stock reserved by pending orders can not be removed
      * @return ArticuloInsumo articuloInsumo or new Exception()
      * */
     @Override
     public ArticuloInsumo removeStock(Long articuloId, double cantidad) throws Exception {
         try {
 
-            Optional<ArticuloInsumo> articuloInsumoOptional = baseRepository.findById(articuloId);
-            ArticuloInsumo articulo = articuloInsumoOptional.get();
             Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+            Map<Long, Double> cantidades = Collections.singletonMap(articuloId, cantidad);
+
+            if (!insumoRepository.descontarStock(cantidades, timestamp).isEmpty()) {
+                throw new Exception("Stock insuficiente");
+            }
+            insumoRepository.registrarMovimientos(cantidades, timestamp, false);
+
+            return baseRepository.findById(articuloId).get();
+
+        } catch (Exception e){
+            this.rollbackOnly();
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    /*
+     * @desc This method gets one page of the stock movements of a supply article, newest first
+     * @return Page<HistorialStock> historial or new Exception()
+     * */
+    @Override
+    public Page<HistorialStock> getHistorial(Long articuloId, int page, int size) throws Exception {
+        try {
 
-            if(articulo.getStockActual() > cantidad){
-                articulo.setStockActual(articulo.getStockActual() - cantidad);
-                articulo.getHistorialStock().add(new HistorialStock(cantidad, timestamp, false));
-                articulo.setUltimaActualizacion(timestamp);
+            return historialStockRepository.findByInsumoIdOrderByFechaMovimientoDescIdDesc(articuloId, PageRequest.of(page, size));
+
+        } catch (Exception e){
+            throw new Exception(e.getMessage());
+        }
+    }
 
-                articulo = baseRepository.save(articulo);
-                return articulo;
+    /*
+     * @desc Fills the fk_insumo of the ledger rows written through the old join table, once on startup
+     * and before the listeners that read the ledger
+     * */
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrarHistorial() {
+        insumoRepository.migrarHistorial();
+    }
+
+    /*
+     * @desc This method adds the stock received in a delivery, read line by line from a CSV
+     * (insumoId,cantidad per line, optional header) or a JSON array of {"insumoId", "cantidad"} objects.
+     * Lines of the same supply are added up and applied in one JDBC batch plus one batch of HistorialStock
+     * rows, without loading the articles. Nothing is applied if any line is invalid or names a missing supply
+     * @return IngresoStockDTO ingreso or new Exception()
+     * */
+    @Override
+    public IngresoStockDTO ingresarStock(InputStream contenido, String contentType) throws Exception {
+        try {
 
+            Map<Long, Double> cantidades = new TreeMap<>();
+            int lineas;
+
+            if (contentType != null && contentType.contains("json")) {
+                lineas = this.leerJson(contenido, cantidades);
             } else {
-                throw new Exception("Stock insuficiente");
+                lineas = this.leerCsv(contenido, cantidades);
             }
 
-        } catch (Exception e){
+            if (cantidades.isEmpty()) {
+                throw new Exception("No hay lineas para ingresar");
+            }
+
+            Date fecha = new Timestamp(System.currentTimeMillis());
+
+            List<Long> inexistentes = insumoRepository.agregarStock(cantidades, fecha);
+            if (!inexistentes.isEmpty()) {
+                throw new Exception("No existen los insumos " + inexistentes);
+            }
+
+            insumoRepository.registrarMovimientos(cantidades, fecha, true);
+
+            double total = 0;
+            for (double cantidad : cantidades.values()) {
+                total += cantidad;
+            }
+
+            return new IngresoStockDTO(lineas, cantidades.size(), total);
+
+        } catch (Exception e) {
+
+            this.rollbackOnly();
             throw new Exception(e.getMessage());
+
         }
     }
 
+    /*
+     * @desc Reads insumoId,cantidad lines (comma or semicolon separated), skipping blank lines, a leading
+     * UTF-8 BOM and an insumoId,cantidad header on the first line
+     * @return int lines read
+     * */
+    private int leerCsv(InputStream contenido, Map<Long, Double> cantidades) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(contenido, StandardCharsets.UTF_8));
+        int numero = 0;
+        int lineas = 0;
+        String linea;
+
+        while ((linea = reader.readLine()) != null) {
+            numero++;
+            if (numero == 1 && linea.startsWith(BOM)) {
+                linea = linea.substring(BOM.length());
+            }
+            linea = linea.trim();
+            if (linea.isEmpty()) {
+                continue;
+            }
+
+            String[] campos = linea.split("[,;]");
+            if (numero == 1 && campos.length == 2
+                    && campos[0].trim().equalsIgnoreCase("insumoId") && campos[1].trim().equalsIgnoreCase("cantidad")) {
+                continue;
+            }
+            if (campos.length != 2) {
+                throw new Exception("Linea " + numero + ": se esperaba insumoId,cantidad");
+            }
+
+            try {
+                this.acumular(cantidades, Long.valueOf(campos[0].trim()), Double.valueOf(campos[1].trim()), numero);
+            } catch (NumberFormatException e) {
+                throw new Exception("Linea " + numero + ": valor no numerico");
+            }
+            lineas++;
+        }
+
+        return lineas;
+    }
+
+    /*
+     * @desc Reads a JSON array of {"insumoId", "cantidad"} objects with a streaming parser
+     * @return int lines read
+     * */
+    private int leerJson(InputStream contenido, Map<Long, Double> cantidades) throws Exception {
+        try (JsonParser parser = objectMapper.getFactory().createParser(contenido)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new Exception("Se esperaba un arreglo de lineas");
+            }
+
+            int lineas = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                lineas++;
+                Long insumoId = null;
+                Double cantidad = null;
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String campo = parser.getCurrentName();
+                    parser.nextToken();
+
+                    if (campo.equals("insumoId")) {
+                        if (parser.currentToken() != JsonToken.VALUE_NUMBER_INT) {
+                            throw new Exception("Linea " + lineas + ": insumoId debe ser un numero entero");
+                        }
+                        insumoId = parser.getLongValue();
+                    } else if (campo.equals("cantidad")) {
+                        if (!parser.currentToken().isNumeric()) {
+                            throw new Exception("Linea " + lineas + ": cantidad debe ser un numero");
+                        }
+                        cantidad = parser.getDoubleValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                if (insumoId == null || cantidad == null) {
+                    throw new Exception("Linea " + lineas + ": se esperaba insumoId y cantidad");
+                }
+                this.acumular(cantidades, insumoId, cantidad, lineas);
+            }
+
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new Exception("Linea " + (lineas + 1) + ": se esperaba un objeto");
+            }
+
+            return lineas;
+        }
+    }
+
+    private void acumular(Map<Long, Double> cantidades, Long insumoId, double cantidad, int numero) throws Exception {
+        if (!(cantidad > 0)) {
+            throw new Exception("Linea " + numero + ": la cantidad debe ser mayor a 0");
+        }
+        cantidades.merge(insumoId, cantidad, Double::sum);
+    }
+
     /*
      * @desc This method gets all supplies where propery "esInsumo" is false,
      * and filter the data if filter string exists
@@ -178,17 +414,8 @@ public class ArticuloInsumoServiceImpl extends BaseServiceImpl<ArticuloInsumo, L
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(esBebida)).and(Specification.where(esPublico)));
             } else {
-                Specification<ArticuloInsumo> filterByDenominacion = spec.findByProperty("denominacion", filter);
-                Specification<ArticuloInsumo> filterByDescripcion = spec.findByProperty("descripcion", filter);
-                Specification<ArticuloInsumo> filterByRubro = spec.findByForeignAttribute("rubro", "denominacion", filter);
-                Specification<ArticuloInsumo> filterByRubroPadre = spec.rubroPadre(filter);
-
                 return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(esBebida)).and(Specification.where(esPublico))
-                        .and(Specification.where(filterByDenominacion)
-                                .or(filterByDescripcion)
-                                .or(filterByRubro)
-                                .or(filterByRubroPadre)
-                        ));
+                        .and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
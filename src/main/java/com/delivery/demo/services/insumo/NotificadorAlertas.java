@@ -0,0 +1,99 @@
+package com.delivery.demo.services.insumo;
+
+import com.delivery.demo.events.AlertaStockEvent;
+import com.delivery.demo.services.sse.EmisorSse;
+import com.delivery.demo.services.sse.EmisorSse.Evento;
+import com.delivery.demo.services.sse.EmisorSse.Suscriptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * @desc Server-sent events of the low stock alerts for the purchasing screens. A subscriber first
+ *       receives an "alertas" event with the supplies currently below their minimum and then one
+ *       "alerta" event for every AlertaStockEvent, delivered through the bounded per-subscriber
+ *       buffers of EmisorSse
+ * */
+@Component
+public class NotificadorAlertas {
+
+    @Autowired
+    AlertasStock alertasStock;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${delivery.stock.alertas-sse-timeout-ms:1800000}")
+    long timeout;
+
+    @Value("${delivery.stock.alertas-sse-buffer:64}")
+    int capacidad;
+
+    @Value("${delivery.stock.alertas-sse-hilos:1}")
+    int hilos;
+
+    private final List<Suscriptor> suscriptores = new CopyOnWriteArrayList<>();
+
+    private EmisorSse emisor;
+
+    @PostConstruct
+    public void init() {
+        emisor = new EmisorSse("notificador-alertas", hilos, timeout, capacidad);
+    }
+
+    /*
+     * @desc This method opens a stream of the low stock alerts, starting with an "alertas" event that
+     *       holds the current ones
+     * @return SseEmitter emitter or new Exception()
+     * */
+    public SseEmitter suscribir() throws Exception {
+        Suscriptor suscriptor = new Suscriptor(emisor);
+        emisor.registrar(suscriptor, () -> suscriptores.add(suscriptor), () -> suscriptores.remove(suscriptor));
+
+        emisor.encolar(suscriptor, this.evento("alertas", alertasStock.getBajoMinimo()));
+        return suscriptor.getEmitter();
+    }
+
+    /*
+     * @desc This method pushes a crossing of the minimum stock to every subscriber
+     * */
+    @EventListener
+    public void onAlertaStockEvent(AlertaStockEvent event) throws Exception {
+        if (suscriptores.isEmpty()) {
+            return;
+        }
+
+        Evento evento = this.evento("alerta", event);
+        for (Suscriptor suscriptor : suscriptores) {
+            emisor.encolar(suscriptor, evento);
+        }
+    }
+
+    /*
+     * @desc This method keeps idle streams open through proxies and drops the closed ones
+     * */
+    @Scheduled(fixedDelayString = "${delivery.stock.alertas-sse-heartbeat-ms:15000}")
+    public void latido() {
+        for (Suscriptor suscriptor : suscriptores) {
+            emisor.encolar(suscriptor, Evento.LATIDO);
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        emisor.cerrar(suscriptores);
+    }
+
+    private Evento evento(String nombre, Object datos) throws Exception {
+        return new Evento(nombre, objectMapper.writeValueAsString(datos));
+    }
+}
@@ -1,19 +1,25 @@
 package com.delivery.demo.services.manufacturado;
 
+import com.delivery.demo.dtos.ArticuloManufacturadoResumenDTO;
 import com.delivery.demo.entities.articulos.ArticuloManufacturado;
+import com.delivery.demo.entities.articulos.Categoria;
 import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
+import com.delivery.demo.services.search.SearchIndex;
 import com.delivery.demo.specifications.SearchSpecification;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.criteria.CompoundSelection;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class ArticuloManufacturadoServiceImpl extends BaseServiceImpl<ArticuloManufacturado, Long> implements ArticuloManufacturadoService {
@@ -22,43 +28,50 @@ public class ArticuloManufacturadoServiceImpl extends BaseServiceImpl<ArticuloMa
         super(baseRepository);
     }
 
-    SearchSpecification<ArticuloManufacturado> spec = new SearchSpecification<ArticuloManufacturado>();
-
-
-    @Override
-    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
-            }
+    @Autowired
+    RecetaCache recetaCache;
 
-            Specification<ArticuloManufacturado> isNotDeleted = spec.isNotDeleted();
+    @Autowired
+    SearchIndex searchIndex;
 
-            Page<ArticuloManufacturado> entityPage;
+    SearchSpecification<ArticuloManufacturado> spec = new SearchSpecification<ArticuloManufacturado>();
 
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            } else {
-                Specification<ArticuloManufacturado> filterByDenominacion = spec.findByProperty("denominacion", filter);
-                Specification<ArticuloManufacturado> filterByDescripcion = spec.findByProperty("descripcion", filter);
-                Specification<ArticuloManufacturado> filterByCategoria = spec.findByForeignAttribute("categoria", "denominacion", filter);
 
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByDenominacion).or(filterByDescripcion).or(filterByCategoria)), pageable);
-            }
+    /*
+     * @desc This method builds the filter applied to the paged listings
+     * @return Specification<ArticuloManufacturado> matching the filter string
+     * */
+    @Override
+    protected Specification<ArticuloManufacturado> filterSpecification(String filter) {
+        Set<Long> articulos = searchIndex.buscar(ArticuloManufacturado.class, filter, "denominacion", "descripcion");
+        Set<Long> categorias = searchIndex.buscar(Categoria.class, filter, "denominacion");
 
-            List<ArticuloManufacturado> entities = entityPage.getContent();
+        Specification<ArticuloManufacturado> filterByDenominacionDescripcion = spec.findByText(articulos, filter, "denominacion", "descripcion");
+        Specification<ArticuloManufacturado> filterByCategoria = spec.findByForeignText("categoria", categorias, filter, "denominacion");
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
+        return Specification.where(filterByDenominacionDescripcion)
+                .or(filterByCategoria);
+    }
 
-            return response;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    /*
+     * @desc Manufacturado row of the listings: the article with the categoria name, without the recipe
+     * @return CompoundSelection<ArticuloManufacturadoResumenDTO> with one ArticuloManufacturadoResumenDTO per row
+     * */
+    @Override
+    protected CompoundSelection<ArticuloManufacturadoResumenDTO> summarySelection(Root<ArticuloManufacturado> root, CriteriaBuilder builder) {
+        Join<ArticuloManufacturado, ?> categoria = root.join("categoria", JoinType.LEFT);
+
+        return builder.construct(ArticuloManufacturadoResumenDTO.class,
+                root.get("id"),
+                root.get("ultimaActualizacion"),
+                root.get("oculto"),
+                root.get("eliminado"),
+                root.get("denominacion"),
+                root.get("descripcion"),
+                root.get("imagen"),
+                root.get("precio"),
+                root.get("tiempoEstimadoCocina"),
+                categoria.get("denominacion"));
     }
 
     @Override
@@ -70,11 +83,7 @@ public class ArticuloManufacturadoServiceImpl extends BaseServiceImpl<ArticuloMa
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<ArticuloManufacturado> filterByCategoria = spec.findByForeignAttribute("categoria", "denominacion", filter);
-                Specification<ArticuloManufacturado> filterByDenominacion = spec.findByProperty("denominacion", filter);
-                Specification<ArticuloManufacturado> filterByDescripcion = spec.findByProperty("descripcion", filter);
-
-                return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByDenominacion).or(filterByDescripcion).or(filterByCategoria)));
+                return baseRepository.findAll(Specification.where(isNotDeleted).and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
@@ -92,16 +101,35 @@ public class ArticuloManufacturadoServiceImpl extends BaseServiceImpl<ArticuloMa
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<ArticuloManufacturado> filterByCategoria = spec.findByForeignAttribute("categoria", "denominacion", filter);
-                Specification<ArticuloManufacturado> filterByDenominacion = spec.findByProperty("denominacion", filter);
-                Specification<ArticuloManufacturado> filterByDescripcion = spec.findByProperty("descripcion", filter);
-
                 return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(isPublic))
-                        .and(Specification.where(filterByDenominacion).or(filterByDescripcion).or(filterByCategoria)));
+                        .and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
             throw new Exception(e.getMessage());
         }
     }
+
+    /*
+     * @desc This method saves a manufactured article and discards its cached recipe
+     * @return ArticuloManufacturado articulo or new Exception()
+     * */
+    @Override
+    public ArticuloManufacturado save(ArticuloManufacturado entity) throws Exception {
+        ArticuloManufacturado articulo = super.save(entity);
+        recetaCache.invalidar(articulo.getId());
+        return articulo;
+    }
+
+    /*
+     * @desc This method updates a manufactured article and discards its cached recipe
+     * @return ArticuloManufacturado articulo or new Exception()
+     * */
+    @Override
+    public ArticuloManufacturado update(Long entityId, ArticuloManufacturado entity) throws Exception {
+        recetaCache.invalidar(entityId);
+        ArticuloManufacturado articulo = super.update(entityId, entity);
+        recetaCache.invalidar(articulo.getId());
+        return articulo;
+    }
 }
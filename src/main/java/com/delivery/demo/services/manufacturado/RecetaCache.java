@@ -0,0 +1,119 @@
+package com.delivery.demo.services.manufacturado;
+
+import com.delivery.demo.repositories.articulos.ArticuloManufacturadoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * @desc Bill of materials of every manufactured article: the supplies and quantities its recipe needs,
+ *       stored as primitive arrays. Missing recipes are loaded with a single projection query and kept
+ *       until the article is saved again, so stock checks never walk the recipe entities
+ * */
+@Component
+public class RecetaCache {
+
+    @Autowired
+    ArticuloManufacturadoRepository manufacturadoRepository;
+
+    private final Map<Long, Receta> recetas = new ConcurrentHashMap<>();
+
+    /*
+     * @desc This method gets the recipes of several manufactured articles, loading the missing ones
+     *       with one query. Articles without recipe rows are left out and not cached, so a recipe
+     *       saved afterwards is read on the next call
+     * @return Map<Long, Receta> recetas by manufactured article id
+     * */
+    public Map<Long, Receta> getAll(Collection<Long> manufacturadoIds) {
+        Map<Long, Receta> resultado = new HashMap<>();
+        Set<Long> faltantes = new HashSet<>();
+
+        for (Long id : manufacturadoIds) {
+            Receta receta = recetas.get(id);
+            if (receta != null) {
+                resultado.put(id, receta);
+            } else {
+                faltantes.add(id);
+            }
+        }
+
+        if (!faltantes.isEmpty()) {
+            Map<Long, List<Object[]>> filas = new HashMap<>();
+            for (Long id : faltantes) {
+                filas.put(id, new ArrayList<>());
+            }
+
+            for (Object[] fila : manufacturadoRepository.getRecetas(faltantes)) {
+                filas.get((Long) fila[0]).add(fila);
+            }
+
+            for (Map.Entry<Long, List<Object[]>> entry : filas.entrySet()) {
+                List<Object[]> detalles = entry.getValue();
+                if (detalles.isEmpty()) {
+                    continue;
+                }
+
+                long[] insumos = new long[detalles.size()];
+                double[] cantidades = new double[detalles.size()];
+
+                for (int i = 0; i < detalles.size(); i++) {
+                    insumos[i] = (Long) detalles.get(i)[1];
+                    cantidades[i] = (Double) detalles.get(i)[2];
+                }
+
+                Receta receta = new Receta(insumos, cantidades);
+                recetas.put(entry.getKey(), receta);
+                resultado.put(entry.getKey(), receta);
+            }
+        }
+
+        return resultado;
+    }
+
+    /*
+     * @desc This method discards the recipe of a manufactured article. It is discarded again once the
+     *       current transaction commits, so a concurrent reader can not cache the old recipe meanwhile
+     * */
+    public void invalidar(Long manufacturadoId) {
+        if (manufacturadoId == null) {
+            return;
+        }
+
+        recetas.remove(manufacturadoId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    recetas.remove(manufacturadoId);
+                }
+            });
+        }
+    }
+
+    public static class Receta {
+        private final long[] insumos;
+        private final double[] cantidades;
+
+        Receta(long[] insumos, double[] cantidades) {
+            this.insumos = insumos;
+            this.cantidades = cantidades;
+        }
+
+        public int size() {
+            return insumos.length;
+        }
+
+        public long getInsumo(int i) {
+            return insumos[i];
+        }
+
+        public double getCantidad(int i) {
+            return cantidades[i];
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.delivery.demo.services.menu;
+
+import com.delivery.demo.entities.Base;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/*
+ * @desc JPA listener of the entities shown in the public menu, tells MenuSnapshot what changed
+ * */
+@Component
+public class MenuListener {
+
+    @Autowired
+    MenuSnapshot menuSnapshot;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void modificado(Base entidad) {
+        menuSnapshot.modificado(entidad);
+    }
+}
@@ -0,0 +1,278 @@
+package com.delivery.demo.services.menu;
+
+import com.delivery.demo.entities.Base;
+import com.delivery.demo.entities.articulos.ArticuloInsumo;
+import com.delivery.demo.entities.articulos.ArticuloManufacturado;
+import com.delivery.demo.entities.articulos.Categoria;
+import com.delivery.demo.entities.articulos.DetalleReceta;
+import com.delivery.demo.entities.articulos.Rubro;
+import com.delivery.demo.events.StockEvent;
+import com.delivery.demo.repositories.articulos.ArticuloInsumoRepository;
+import com.delivery.demo.repositories.articulos.ArticuloManufacturadoRepository;
+import com.delivery.demo.specifications.SearchSpecification;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*
+ * @desc Pre-serialized public menu: the JSON of the unfiltered "allPublic" manufactured articles and
+ *       drinks listings, with a strong ETag. Every article is kept as its own JSON fragment, so a
+ *       change only re-serializes the articles it touches; changes are collected as they commit and
+ *       applied on the next read. Categoria and rubro changes rebuild the listings they appear in
+ * */
+@Component
+public class MenuSnapshot {
+
+    @Autowired
+    ArticuloManufacturadoRepository manufacturadoRepository;
+
+    @Autowired
+    ArticuloInsumoRepository insumoRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private Catalogo<ArticuloManufacturado> manufacturados;
+    private Catalogo<ArticuloInsumo> bebidas;
+
+    @PostConstruct
+    public void init() {
+        SearchSpecification<ArticuloManufacturado> specManufacturado = new SearchSpecification<ArticuloManufacturado>();
+        SearchSpecification<ArticuloInsumo> specInsumo = new SearchSpecification<ArticuloInsumo>();
+
+        /* Same conditions as findAllPublic and getBebidas without filter */
+        manufacturados = new Catalogo<>(
+                () -> manufacturadoRepository.findAll(Specification.where(specManufacturado.isNotDeleted())),
+                manufacturadoRepository::findAllById,
+                articulo -> !articulo.isEliminado(),
+                articulo -> {
+                    Set<Long> insumos = new HashSet<>();
+                    if (articulo.getDetallesReceta() != null) {
+                        for (DetalleReceta detalle : articulo.getDetallesReceta()) {
+                            insumos.add(detalle.getInsumo().getId());
+                        }
+                    }
+                    return insumos;
+                });
+
+        bebidas = new Catalogo<>(
+                () -> insumoRepository.findAll(Specification.where(specInsumo.isNotDeleted())
+                        .and(specInsumo.esBebida()).and(specInsumo.isNotHidden())),
+                insumoRepository::findAllById,
+                articulo -> !articulo.isEliminado() && !articulo.isEsInsumo() && !articulo.isOculto(),
+                articulo -> Collections.singleton(articulo.getId()));
+    }
+
+    public Vista getManufacturados() {
+        return this.leer(manufacturados);
+    }
+
+    public Vista getBebidas() {
+        return this.leer(bebidas);
+    }
+
+    /*
+     * @desc This method records that an entity shown in the menu changed, once the transaction commits
+     * */
+    public void modificado(Base entidad) {
+        Long id = entidad.getId();
+
+        if (entidad instanceof ArticuloManufacturado) {
+            this.alConfirmar(() -> manufacturados.pendiente(id));
+        } else if (entidad instanceof ArticuloInsumo) {
+            this.alConfirmar(() -> {
+                bebidas.pendiente(id);
+                manufacturados.dependientesModificados(Collections.singleton(id));
+            });
+        } else if (entidad instanceof Categoria) {
+            this.alConfirmar(() -> manufacturados.invalidar());
+        } else if (entidad instanceof Rubro) {
+            this.alConfirmar(() -> {
+                manufacturados.invalidar();
+                bebidas.invalidar();
+            });
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockEvent(StockEvent event) {
+        bebidas.dependientesModificados(event.getInsumoIds());
+        manufacturados.dependientesModificados(event.getInsumoIds());
+    }
+
+    private Vista leer(Catalogo<?> catalogo) {
+        Vista vista = catalogo.vista;
+        if (vista != null && !catalogo.tieneCambios()) {
+            return vista;
+        }
+
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template.execute(status -> catalogo.actualizar(objectMapper));
+    }
+
+    private void alConfirmar(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Vista {
+        private byte[] json;
+        private String etag;
+    }
+
+    private static class Catalogo<E extends Base> {
+        private final Supplier<List<E>> cargarTodo;
+        private final Function<Set<Long>, List<E>> cargar;
+        private final Predicate<E> visible;
+        private final Function<E, Set<Long>> dependencias;
+
+        private final TreeMap<Long, byte[]> fragmentos = new TreeMap<>();
+        /* Supply id to the ids of the articles whose JSON embeds it */
+        private final Map<Long, Set<Long>> dependientes = new HashMap<>();
+        private final Map<Long, Set<Long>> dependenciasPorArticulo = new HashMap<>();
+
+        private Set<Long> pendientes = new HashSet<>();
+        private boolean completo = true;
+        private volatile boolean cambios = true;
+        private volatile Vista vista;
+
+        Catalogo(Supplier<List<E>> cargarTodo, Function<Set<Long>, List<E>> cargar,
+                 Predicate<E> visible, Function<E, Set<Long>> dependencias) {
+            this.cargarTodo = cargarTodo;
+            this.cargar = cargar;
+            this.visible = visible;
+            this.dependencias = dependencias;
+        }
+
+        boolean tieneCambios() {
+            return cambios;
+        }
+
+        synchronized void pendiente(Long id) {
+            pendientes.add(id);
+            cambios = true;
+        }
+
+        synchronized void dependientesModificados(Set<Long> insumoIds) {
+            for (Long insumoId : insumoIds) {
+                Set<Long> articulos = dependientes.get(insumoId);
+                if (articulos != null) {
+                    pendientes.addAll(articulos);
+                    cambios = true;
+                }
+            }
+        }
+
+        synchronized void invalidar() {
+            completo = true;
+            cambios = true;
+        }
+
+        synchronized Vista actualizar(ObjectMapper objectMapper) {
+            if (!cambios && vista != null) {
+                return vista;
+            }
+
+            try {
+                if (completo) {
+                    fragmentos.clear();
+                    dependientes.clear();
+                    dependenciasPorArticulo.clear();
+                    for (E articulo : cargarTodo.get()) {
+                        this.escribir(articulo, objectMapper);
+                    }
+                } else if (!pendientes.isEmpty()) {
+                    for (Long id : pendientes) {
+                        this.borrar(id);
+                    }
+                    for (E articulo : cargar.apply(pendientes)) {
+                        if (visible.test(articulo)) {
+                            this.escribir(articulo, objectMapper);
+                        }
+                    }
+                }
+
+                ByteArrayOutputStream json = new ByteArrayOutputStream();
+                json.write('[');
+                boolean primero = true;
+                for (byte[] fragmento : fragmentos.values()) {
+                    if (!primero) {
+                        json.write(',');
+                    }
+                    json.write(fragmento);
+                    primero = false;
+                }
+                json.write(']');
+
+                byte[] bytes = json.toByteArray();
+                vista = new Vista(bytes, "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"");
+
+                pendientes = new HashSet<>();
+                completo = false;
+                cambios = false;
+
+                return vista;
+            } catch (Exception e) {
+                completo = true;
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        private void escribir(E articulo, ObjectMapper objectMapper) throws Exception {
+            fragmentos.put(articulo.getId(), objectMapper.writeValueAsBytes(articulo));
+
+            Set<Long> insumos = dependencias.apply(articulo);
+            dependenciasPorArticulo.put(articulo.getId(), insumos);
+            for (Long insumoId : insumos) {
+                dependientes.computeIfAbsent(insumoId, clave -> new HashSet<>()).add(articulo.getId());
+            }
+        }
+
+        private void borrar(Long id) {
+            fragmentos.remove(id);
+
+            Set<Long> insumos = dependenciasPorArticulo.remove(id);
+            if (insumos != null) {
+                for (Long insumoId : insumos) {
+                    Set<Long> articulos = dependientes.get(insumoId);
+                    if (articulos != null) {
+                        articulos.remove(id);
+                        if (articulos.isEmpty()) {
+                            dependientes.remove(insumoId);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.delivery.demo.services.orden;
+
+import com.delivery.demo.repositories.usuarios.UsuarioRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * @desc Computes the delivery time of a new order without queries. The kitchen backlog (minutes of
+ *       the orders "EN PROCESO" or "DEMORADO") is read from OrdenesActivas and the number of cooks is
+ *       kept in memory, periodically reconciled against the database
+ * */
+@Component
+public class EstimadorEntrega {
+
+    @Autowired
+    UsuarioRepository usuarioRepository;
+
+    @Autowired
+    OrdenesActivas ordenesActivas;
+
+    private final AtomicLong cantidadCocineros = new AtomicLong();
+
+    /*
+     * @desc This method calculates the estimated delivery time of an order
+     *       taking into account the orders found in the kitchen
+     * @return Date horarioEntrega
+     * */
+    public Date calcular(Date fechaEntrada, int tiempoOrdenActual, boolean delivery) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(fechaEntrada);
+
+        long tiempoTotalOrdenes = ordenesActivas.getMinutosEnCocina();
+
+        if (tiempoTotalOrdenes > 0) {
+            long cocineros = Math.max(1, cantidadCocineros.get());
+            calendar.add(Calendar.MINUTE, (int) (tiempoTotalOrdenes / cocineros));
+        }
+
+        calendar.add(Calendar.MINUTE, tiempoOrdenActual);
+
+        if (delivery) {
+            calendar.add(Calendar.MINUTE, 10);
+        }
+
+        return calendar.getTime();
+    }
+
+    /*
+     * @desc This method replaces the number of cooks with the one stored in the database
+     * */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${delivery.eta.reconciliacion-ms:60000}")
+    public void reconciliar() {
+        cantidadCocineros.set(usuarioRepository.contarPorRol("cocinero"));
+    }
+}
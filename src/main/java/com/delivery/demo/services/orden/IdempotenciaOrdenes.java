@@ -0,0 +1,135 @@
+package com.delivery.demo.services.orden;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * @desc Idempotency keys of the submitted orders. The first request with a key reserves it and, once
+ *       its transaction commits, records the id of the order it created; a retry with the same key gets
+ *       that id instead of creating another order, and a retry that arrives while the first one is still
+ *       running waits for it. A key whose order was rolled back is released. Keys are kept in a bounded
+ *       LRU map for a limited time
+ * */
+@Component
+public class IdempotenciaOrdenes {
+
+    @Value("${delivery.ordenes.idempotencia-capacidad:10000}")
+    int capacidad;
+
+    @Value("${delivery.ordenes.idempotencia-ttl-ms:86400000}")
+    long ttl;
+
+    @Value("${delivery.ordenes.idempotencia-espera-ms:30000}")
+    long espera;
+
+    private Map<String, Registro> registros;
+
+    @PostConstruct
+    public void init() {
+        registros = new LinkedHashMap<String, Registro>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Registro> eldest) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    /*
+     * @desc This method reserves a key for the current transaction, unless another request holds it
+     * @return Reserva reserva, new if the caller must create the order
+     * */
+    public Reserva reservar(String clave) {
+        Registro registro;
+
+        synchronized (registros) {
+            Registro actual = registros.get(clave);
+            if (actual != null && System.currentTimeMillis() < actual.vence) {
+                return new Reserva(actual, false);
+            }
+
+            registro = new Registro(clave, System.currentTimeMillis() + ttl);
+            registros.put(clave, registro);
+        }
+
+        Reserva reserva = new Reserva(registro, true);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED && registro.ordenId != null) {
+                        registro.resultado.complete(registro.ordenId);
+                    } else {
+                        liberar(reserva);
+                    }
+                }
+            });
+        }
+
+        return reserva;
+    }
+
+    /*
+     * @desc This method records the order created under a reserved key, effective once the transaction commits
+     * */
+    public void confirmar(Reserva reserva, Long ordenId) {
+        reserva.registro.ordenId = ordenId;
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            reserva.registro.resultado.complete(ordenId);
+        }
+    }
+
+    /*
+     * @desc This method releases a key whose order was not created, so a retry can create it
+     * */
+    public void liberar(Reserva reserva) {
+        synchronized (registros) {
+            registros.remove(reserva.registro.clave, reserva.registro);
+        }
+        reserva.registro.resultado.complete(null);
+    }
+
+    /*
+     * @desc This method waits for the request holding a key to finish
+     * @return Long id of its order, null if it failed, or new Exception() if it takes too long
+     * */
+    public Long esperar(Reserva reserva) throws Exception {
+        return reserva.registro.resultado.get(espera, TimeUnit.MILLISECONDS);
+    }
+
+    /* Handle of one request on a key, nueva when that request holds it */
+    public static class Reserva {
+        private final Registro registro;
+        private final boolean nueva;
+
+        Reserva(Registro registro, boolean nueva) {
+            this.registro = registro;
+            this.nueva = nueva;
+        }
+
+        public boolean esNueva() {
+            return nueva;
+        }
+    }
+
+    private static class Registro {
+        private final String clave;
+        private final long vence;
+        private final CompletableFuture<Long> resultado = new CompletableFuture<>();
+        private volatile Long ordenId;
+
+        Registro(String clave, long vence) {
+            this.clave = clave;
+            this.vence = vence;
+        }
+    }
+}
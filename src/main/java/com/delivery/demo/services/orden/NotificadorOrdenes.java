@@ -0,0 +1,173 @@
+package com.delivery.demo.services.orden;
+
+import com.delivery.demo.events.OrdenEvent;
+import com.delivery.demo.services.sse.EmisorSse;
+import com.delivery.demo.services.sse.EmisorSse.Evento;
+import com.delivery.demo.services.usuario.UidResolver;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * @desc Server-sent events of the orders. Kitchen and cashier screens subscribe to some states and
+ *       clientes to their own orders; both first receive the active orders they follow from
+ *       OrdenesActivas and then one "orden" event for every committed change of them, delivered
+ *       through the bounded per-subscriber buffers of EmisorSse
+ * */
+@Component
+public class NotificadorOrdenes {
+
+    @Autowired
+    OrdenesActivas ordenesActivas;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    UidResolver uidResolver;
+
+    @Value("${delivery.ordenes.sse-timeout-ms:1800000}")
+    long timeout;
+
+    @Value("${delivery.ordenes.sse-buffer:64}")
+    int capacidad;
+
+    @Value("${delivery.ordenes.sse-hilos:4}")
+    int hilos;
+
+    private final List<Suscriptor> tablero = new CopyOnWriteArrayList<>();
+    private final Map<Long, List<Suscriptor>> clientes = new ConcurrentHashMap<>();
+
+    private EmisorSse emisor;
+
+    @PostConstruct
+    public void init() {
+        emisor = new EmisorSse("notificador-ordenes", hilos, timeout, capacidad);
+    }
+
+    /*
+     * @desc This method opens a stream of the orders in the given states, all the active ones if none
+     *       is given, starting with an "ordenes" event that holds the current ones
+     * @return SseEmitter emitter or new Exception()
+     * */
+    public SseEmitter suscribirTablero(Collection<String> estados) throws Exception {
+        Set<String> filtro = new HashSet<>();
+        if (estados != null) {
+            for (String estado : estados) {
+                filtro.add(estado.trim().toLowerCase());
+            }
+        }
+
+        Suscriptor suscriptor = new Suscriptor(emisor, filtro);
+        emisor.registrar(suscriptor, () -> tablero.add(suscriptor), () -> tablero.remove(suscriptor));
+
+        emisor.encolar(suscriptor, this.evento("ordenes", ordenesActivas.getPorEstado(filtro)));
+        return suscriptor.getEmitter();
+    }
+
+    /*
+     * @desc This method opens a stream of the active orders of a cliente, their state and delivery
+     *       time, starting with an "ordenes" event that holds the current ones
+     * @return SseEmitter emitter or new Exception()
+     * */
+    public SseEmitter suscribirCliente(String clienteUid) throws Exception {
+        Long clienteId = uidResolver.getId(clienteUid);
+
+        Suscriptor suscriptor = new Suscriptor(emisor, Collections.emptySet());
+        emisor.registrar(suscriptor,
+                () -> clientes.compute(clienteId, (id, lista) -> {
+                    List<Suscriptor> suscriptores = lista != null ? lista : new CopyOnWriteArrayList<>();
+                    suscriptores.add(suscriptor);
+                    return suscriptores;
+                }),
+                () -> clientes.computeIfPresent(clienteId, (id, lista) -> {
+                    lista.remove(suscriptor);
+                    return lista.isEmpty() ? null : lista;
+                }));
+
+        emisor.encolar(suscriptor, this.evento("ordenes", ordenesActivas.getPorCliente(clienteId)));
+        return suscriptor.getEmitter();
+    }
+
+    /*
+     * @desc This method pushes a committed change of an order, after OrdenesActivas applies it
+     * */
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrdenEvent(OrdenEvent event) throws Exception {
+        List<Suscriptor> delCliente = event.getClienteId() == null ? null : clientes.get(event.getClienteId());
+        if (tablero.isEmpty() && (delCliente == null || delCliente.isEmpty())) {
+            return;
+        }
+
+        Evento evento = this.evento("orden", event);
+        String anterior = event.getEstadoAnterior() == null ? null : event.getEstadoAnterior().trim().toLowerCase();
+        String actual = event.getEstadoActual() == null ? null : event.getEstadoActual().trim().toLowerCase();
+
+        for (Suscriptor suscriptor : tablero) {
+            if (suscriptor.recibe(anterior) || suscriptor.recibe(actual)) {
+                emisor.encolar(suscriptor, evento);
+            }
+        }
+
+        if (delCliente != null) {
+            for (Suscriptor suscriptor : delCliente) {
+                emisor.encolar(suscriptor, evento);
+            }
+        }
+    }
+
+    /*
+     * @desc This method keeps idle streams open through proxies and drops the closed ones
+     * */
+    @Scheduled(fixedDelayString = "${delivery.ordenes.sse-heartbeat-ms:15000}")
+    public void latido() {
+        for (Suscriptor suscriptor : tablero) {
+            emisor.encolar(suscriptor, Evento.LATIDO);
+        }
+        for (List<Suscriptor> suscriptores : clientes.values()) {
+            for (Suscriptor suscriptor : suscriptores) {
+                emisor.encolar(suscriptor, Evento.LATIDO);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        List<Suscriptor> suscriptores = new ArrayList<>(tablero);
+        for (List<Suscriptor> delCliente : clientes.values()) {
+            suscriptores.addAll(delCliente);
+        }
+
+        emisor.cerrar(suscriptores);
+    }
+
+    private Evento evento(String nombre, Object datos) throws Exception {
+        return new Evento(nombre, objectMapper.writeValueAsString(datos));
+    }
+
+    private static class Suscriptor extends EmisorSse.Suscriptor {
+        /* States followed by a tablero, empty follows every active one */
+        private final Set<String> estados;
+
+        Suscriptor(EmisorSse emisor, Set<String> estados) {
+            super(emisor);
+            this.estados = estados;
+        }
+
+        boolean recibe(String estado) {
+            return estados.isEmpty() ? OrdenesActivas.esActivo(estado) : estados.contains(estado);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.delivery.demo.services.orden;
 
+import com.delivery.demo.dtos.CambioEstadoDTO;
+import com.delivery.demo.dtos.ResultadoCambioEstadoDTO;
 import com.delivery.demo.entities.comprobantes.DetalleOrden;
 import com.delivery.demo.entities.comprobantes.Estado;
 import com.delivery.demo.entities.comprobantes.Orden;
@@ -12,11 +14,13 @@ import java.util.Map;
 
 public interface OrdenService extends BaseService<Orden, Long> {
     public Orden save(Orden orden, String clienteUid) throws Exception;
+    public Orden save(Orden orden, String clienteUid, String idempotencyKey) throws Exception;
     public int calcularTiempoTotalPreparacion (List<DetalleOrden> detalleOrden);
     public Date calcularHorarioEntrega(Date fechaEntrada, int tiempoOrdenActual, boolean delivery) throws Exception;
     public Orden addRepartidor(Empleado repartidor, Long ordenId) throws Exception;
     public Orden actualizarEstado(Estado estado, Long ordenId) throws Exception;
-    public boolean controlStock(List<DetalleOrden> detalles);
+    public List<ResultadoCambioEstadoDTO> actualizarEstados(List<CambioEstadoDTO> cambios) throws Exception;
+    public boolean controlStock(List<DetalleOrden> detalles) throws Exception;
     public List<DetalleOrden> removeStock(List<DetalleOrden> detalles) throws Exception;
     public Map<String, Object> ordenesEnCocina(String filter, int page, int size, String sortBy, String direction) throws Exception;
     public List<Orden> getOrdenesPendientes(String clienteUid) throws Exception;
@@ -1,27 +1,38 @@
 package com.delivery.demo.services.orden;
 
+import com.delivery.demo.dtos.CambioEstadoDTO;
+import com.delivery.demo.dtos.OrdenActivaDTO;
+import com.delivery.demo.dtos.OrdenResumenDTO;
+import com.delivery.demo.dtos.ResultadoCambioEstadoDTO;
 import com.delivery.demo.entities.articulos.*;
 import com.delivery.demo.entities.comprobantes.DetalleOrden;
 import com.delivery.demo.entities.comprobantes.Estado;
 import com.delivery.demo.entities.comprobantes.Orden;
+import com.delivery.demo.entities.comprobantes.TipoEstado;
 import com.delivery.demo.entities.usuarios.Cliente;
 import com.delivery.demo.entities.usuarios.Empleado;
-import com.delivery.demo.entities.usuarios.Usuario;
+import com.delivery.demo.events.OrdenEvent;
+import com.delivery.demo.exceptions.StockInsuficienteException;
 import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.repositories.articulos.ArticuloInsumoRepository;
-import com.delivery.demo.repositories.comprobantes.EstadoRepository;
 import com.delivery.demo.repositories.usuarios.ClienteRepository;
-import com.delivery.demo.repositories.usuarios.UsuarioRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
+import com.delivery.demo.services.estado.EstadoRegistry;
+import com.delivery.demo.services.manufacturado.RecetaCache;
+import com.delivery.demo.services.reserva.ReservaStockService;
+import com.delivery.demo.services.search.SearchIndex;
+import com.delivery.demo.services.usuario.UidResolver;
 import com.delivery.demo.specifications.SearchSpecification;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.criteria.CompoundSelection;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -32,70 +43,92 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
     ArticuloInsumoRepository insumoRepository;
 
     @Autowired
-    UsuarioRepository usuarioRepository;
+    ClienteRepository clienteRepository;
 
     @Autowired
-    ClienteRepository clienteRepository;
+    EstadoRegistry estadoRegistry;
+
+    @Autowired
+    EstimadorEntrega estimadorEntrega;
+
+    @Autowired
+    OrdenesActivas ordenesActivas;
+
+    @Autowired
+    IdempotenciaOrdenes idempotencia;
 
     @Autowired
-    EstadoRepository estadoRepository;
+    ReservaStockService reservaStockService;
+
+    @Autowired
+    RecetaCache recetaCache;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
 
     public OrdenServiceImpl(BaseRepository<Orden, Long> baseRepository) {
         super(baseRepository);
     }
 
 
+    @Autowired
+    SearchIndex searchIndex;
+
+    @Autowired
+    UidResolver uidResolver;
+
     SearchSpecification<Orden> spec = new SearchSpecification<Orden>();
     Specification<Orden> isNotDeleted = spec.isNotDeleted();
-    SearchSpecification<Estado> specEstado = new SearchSpecification<Estado>();
-    SearchSpecification<Cliente> specCliente = new SearchSpecification<Cliente>();
 
     /*
-     * @desc This method gets all orders paged and sorts and filter data
-     * @return Map<String, Object> ordenes or new Exception()
+     * @desc This method builds the filter applied to the paged listings
+     * @return Specification<Orden> matching the filter string
      * */
     @Override
-    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
-            }
-
-            Page<Orden> entityPage;
-
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            } else {
-                Specification<Orden> filterByEstado = spec.findByEstado(filter);
-                Specification<Orden> filterById = spec.findByProperty("id", filter);
-                Specification<Orden> filterByFormaPago = spec.findByProperty("formaPago", filter);
-                Specification<Orden> filterByNombreCliente = spec.findByForeignAttribute("cliente", "nombre", filter);
-                Specification<Orden> filterByApellidoCliente = spec.findByForeignAttribute("cliente", "apellido", filter);
-                Specification<Orden> filterByClienteUid = spec.findByForeignAttribute("cliente", "uid", filter);
-
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted)
-                        .and(Specification.where(filterByEstado)
-                                .or(filterByClienteUid)
-                                .or(filterByNombreCliente)
-                                .or(filterByApellidoCliente)
-                                .or(filterById)
-                                .or(filterByFormaPago)
-                                ), pageable);
-            }
-
-            List<Orden> entities = entityPage.getContent();
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
+    protected Specification<Orden> filterSpecification(String filter) {
+        Set<Long> clientes = searchIndex.buscar(Cliente.class, filter, "nombre", "apellido", "uid");
+
+        Specification<Orden> filterByEstado = spec.findByForeignIds("estado", estadoRegistry.buscar(filter));
+        Specification<Orden> filterById = spec.findById(filter);
+        Specification<Orden> filterByFormaPago = spec.findByPropertyEquals("formaPago", filter);
+        Specification<Orden> filterByCliente = spec.findByForeignText("cliente", clientes, filter, "nombre", "apellido", "uid");
+
+        return Specification.where(filterByEstado)
+                .or(filterByCliente)
+                .or(filterById)
+                .or(filterByFormaPago);
+    }
 
-            return response;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    /*
+     * @desc Orden row of the listings: the order itself with the estado, cliente and repartidor names, without
+     * the detalles and the direccion of delivery
+     * @return CompoundSelection<OrdenResumenDTO> with one OrdenResumenDTO per row
+     * */
+    @Override
+    protected CompoundSelection<OrdenResumenDTO> summarySelection(Root<Orden> root, CriteriaBuilder builder) {
+        Join<Orden, ?> estado = root.join("estado", JoinType.LEFT);
+        Join<Orden, ?> cliente = root.join("cliente", JoinType.LEFT);
+        Join<Orden, ?> repartidor = root.join("repartidor", JoinType.LEFT);
+
+        return builder.construct(OrdenResumenDTO.class,
+                root.get("id"),
+                root.get("ultimaActualizacion"),
+                root.get("oculto"),
+                root.get("eliminado"),
+                root.get("fecha"),
+                root.get("formaPago"),
+                root.get("montoDescuento"),
+                root.get("total"),
+                estado.get("denominacion"),
+                root.get("aclaraciones"),
+                root.get("delivery"),
+                root.get("tiempoTotalPreparacion"),
+                root.get("horarioEntrega"),
+                cliente.get("id"),
+                cliente.get("nombre"),
+                cliente.get("apellido"),
+                repartidor.get("nombre"),
+                repartidor.get("apellido"));
     }
 
     /*
@@ -109,20 +142,7 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<Orden> filterByEstado = spec.findByEstado(filter);
-                Specification<Orden> filterById = spec.findByProperty("id", filter);
-                Specification<Orden> filterByFormaPago = spec.findByProperty("formaPago", filter);
-                Specification<Orden> filterByNombreCliente = spec.findByForeignAttribute("cliente", "nombre", filter);
-                Specification<Orden> filterByApellidoCliente = spec.findByForeignAttribute("cliente", "apellido", filter);
-                Specification<Orden> filterByClienteUid = spec.findByForeignAttribute("cliente", "uid", filter);
-
-                return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByEstado)
-                        .or(filterById)
-                        .or(filterByClienteUid)
-                        .or(filterByFormaPago)
-                        .or(filterByNombreCliente)
-                        .or(filterByApellidoCliente)
-                ));
+                return baseRepository.findAll(Specification.where(isNotDeleted).and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
@@ -131,15 +151,42 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
     }
 
     /*
-    * @desc This method completes the information of an order and saves it in the database
-    * @return Entity "Orden" saved
+    * @desc This method completes the information of an order, reserves the stock it needs
+    * and saves it in the database
+    * @return Entity "Orden" saved or new Exception() if any product is out of stock
     * */
     @Override
     public Orden save(Orden orden, String clienteUid) throws Exception {
+        return this.save(orden, clienteUid, null);
+    }
+
+    /*
+    * @desc Same as save(orden, clienteUid) but retries with the same idempotency key return the order
+    * created by the first request instead of creating another one (see IdempotenciaOrdenes)
+    * @return Entity "Orden" saved or new Exception() if any product is out of stock
+    * */
+    @Override
+    public Orden save(Orden orden, String clienteUid, String idempotencyKey) throws Exception {
+        IdempotenciaOrdenes.Reserva reserva = null;
+
         try {
 
-            Specification<Cliente> filterByUid = specCliente.findByUid(clienteUid);
-            Optional<Cliente> cliente = clienteRepository.findOne(Specification.where(filterByUid));
+            if (idempotencyKey != null && !idempotencyKey.equals("")) {
+                while (true) {
+                    reserva = idempotencia.reservar(clienteUid + "|" + idempotencyKey);
+                    if (reserva.esNueva()) {
+                        break;
+                    }
+
+                    /* Null when the first request failed and released the key */
+                    Long ordenId = idempotencia.esperar(reserva);
+                    if (ordenId != null) {
+                        return baseRepository.findById(ordenId).get();
+                    }
+                }
+            }
+
+            Optional<Cliente> cliente = clienteRepository.findById(uidResolver.getId(clienteUid));
             orden.setCliente(cliente.get());
 
             /* FECHA */
@@ -148,9 +195,7 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
             orden.setUltimaActualizacion(timestamp);
 
             /* ESTADO */
-            Specification<Estado> filterByDenominacion = specEstado.findByProperty("denominacion", "pendiente");
-            Optional<Estado> estado = estadoRepository.findOne(Specification.where(filterByDenominacion));
-            orden.setEstado(estado.get());
+            orden.setEstado(estadoRegistry.get(TipoEstado.PENDIENTE));
 
             /* TIEMPO PREPARACION */
             orden.setTiempoTotalPreparacion(this.calcularTiempoTotalPreparacion(orden.getDetalles()));
@@ -158,15 +203,27 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
             /* HORARIO ENTREGA */
             orden.setHorarioEntrega(this.calcularHorarioEntrega(orden.getFecha(), orden.getTiempoTotalPreparacion(), orden.isDelivery()));
 
-            if(this.controlStock(orden.getDetalles())){
-                orden = baseRepository.save(orden);
-                return orden;
-            } else {
-                throw new Exception("Uno o más productos están fuera de stock");
+            /* RESERVA DE STOCK */
+            Map<Long, Double> consumo = this.calcularConsumo(orden.getDetalles());
+            reservaStockService.reservar(consumo);
+
+            orden = baseRepository.save(orden);
+            countCache.invalidar(domainClass);
+            reservaStockService.registrar(orden.getId(), consumo);
+
+            eventPublisher.publishEvent(OrdenEvent.of(orden, null));
+
+            if (reserva != null) {
+                idempotencia.confirmar(reserva, orden.getId());
             }
+            return orden;
 
         } catch (Exception e) {
 
+            if (reserva != null && reserva.esNueva()) {
+                idempotencia.liberar(reserva);
+            }
+            this.rollbackOnly();
             throw new Exception(e.getMessage());
 
         }
@@ -174,46 +231,15 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
 
     /*
      * @desc This method calculates the estimated delivery time of an order
-     *       taking into account the orders found in the kitchen
+     *       taking into account the orders found in the kitchen (see EstimadorEntrega)
      * @return Date horarioEntrega
      * */
     @Override
     public Date calcularHorarioEntrega(Date fechaEntrada, int tiempoOrdenActual, boolean delivery) throws Exception {
         try{
 
-            SearchSpecification<Orden> spec = new SearchSpecification<Orden>();
-            Specification<Orden> isNotDeleted = spec.isNotDeleted();
-
-            Specification<Orden> filterByEnProceso = spec.findByEstado("en proceso");
-            Specification<Orden> filterByDemorado = spec.findByEstado("demorado");
-            List<Orden> ordenesEnCocina = baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByEnProceso).or(filterByDemorado)));
-
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTime(fechaEntrada);
-
-            if(ordenesEnCocina.size() > 0) {
-                int tiempoTotalOrdenes = 0;
-
-                for (Orden ordenAux: ordenesEnCocina){
-                    tiempoTotalOrdenes += ordenAux.getTiempoTotalPreparacion();
-                }
-
-                SearchSpecification<Usuario> userSpec = new SearchSpecification<Usuario>();
-                Specification<Usuario> filterByCocinero = userSpec.findByForeignAttribute("rol", "denominacion", "cocinero");
-                long cantidadCocinero = usuarioRepository.count(Specification.where(filterByCocinero));
+            return estimadorEntrega.calcular(fechaEntrada, tiempoOrdenActual, delivery);
 
-                int tiempoEspera = (int) (tiempoTotalOrdenes / cantidadCocinero);
-
-                calendar.add(Calendar.MINUTE, tiempoEspera);
-            }
-
-            calendar.add(Calendar.MINUTE, tiempoOrdenActual);
-
-            if(delivery){
-                calendar.add(Calendar.MINUTE, 10);
-            }
-
-            return calendar.getTime();
         } catch (Exception e){
             throw new Exception(e.getMessage());
         }
@@ -245,7 +271,7 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
      * @desc This method updates the order status and performs different operations
      * according to the selected status:
      * DEMORADO: adds 10' to the order delivery time
-     * EN PROCESO: calls controlStock(). If true calls removeStock(), else set order's state to "CANCELADO"
+     * Leaving "PENDIENTE" consumes the order's stock reservation, or releases it if the new state is "CANCELADO"
      * @return Orden ordenUpdated or new Exception()
      * */
     @Override
@@ -254,33 +280,262 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
             Optional<Orden> ordenOpcional = baseRepository.findById(ordenId);
             Orden orden = ordenOpcional.get();
 
+            String estadoAnterior = orden.getEstado() != null ? orden.getEstado().getDenominacion() : null;
             orden.setEstado(estado);
 
-            if(estado.getDenominacion().equals("demorado")){
+            if(TipoEstado.DEMORADO.es(estado)){
                 Calendar calendar = Calendar.getInstance();
                 calendar.setTime(orden.getHorarioEntrega());
                 calendar.add(Calendar.MINUTE, 10);
                 orden.setHorarioEntrega(calendar.getTime());
-            } else if (estado.getDenominacion().equals("en proceso")){
-                if(this.controlStock(orden.getDetalles())){
-                    orden.setDetalles(this.removeStock(orden.getDetalles()));
-                } else {
-                    Specification<Estado> cancelado = specEstado.findByProperty("denominacion", "cancelado");
-                    Optional<Estado> estadoCancelado = estadoRepository.findOne(Specification.where(cancelado));
-
-                    orden.setEstado(estadoCancelado.get());
-                }
             }
 
+            this.procesarReserva(orden, estadoAnterior);
+
             Timestamp timestamp = new Timestamp(System.currentTimeMillis());
             orden.setUltimaActualizacion(timestamp);
 
             orden = baseRepository.save(orden);
+            countCache.invalidar(domainClass);
+            eventPublisher.publishEvent(OrdenEvent.of(orden, estadoAnterior));
+
+            return orden;
+
+        } catch (Exception e) {
+
+            this.rollbackOnly();
+            throw new Exception(e.getMessage());
+
+        }
+    }
+
+    /*
+     * @desc This method saves an order as given and notifies the active orders and the live screens
+     * @return Orden orden or new Exception()
+     * */
+    @Override
+    public Orden save(Orden orden) throws Exception {
+        try {
+
+            orden = super.save(orden);
+            eventPublisher.publishEvent(OrdenEvent.of(orden, null));
 
             return orden;
 
         } catch (Exception e) {
 
+            this.rollbackOnly();
+            throw new Exception(e.getMessage());
+
+        }
+    }
+
+    /*
+     * @desc This method updates an order as given and notifies the active orders and the live screens
+     * with the state it had before
+     * @return Orden ordenUpdated or new Exception()
+     * */
+    @Override
+    public Orden update(Long entityId, Orden orden) throws Exception {
+        try {
+
+            Optional<Orden> ordenOpcional = baseRepository.findById(entityId);
+            String estadoAnterior = ordenOpcional.isPresent() && ordenOpcional.get().getEstado() != null
+                    ? ordenOpcional.get().getEstado().getDenominacion() : null;
+
+            Orden ordenUpdated = super.update(entityId, orden);
+            eventPublisher.publishEvent(OrdenEvent.of(ordenUpdated, estadoAnterior));
+
+            return ordenUpdated;
+
+        } catch (Exception e) {
+
+            this.rollbackOnly();
+            throw new Exception(e.getMessage());
+
+        }
+    }
+
+    /*
+     * @desc This method soft-deletes an order, giving back the stock reserved by it if it is still "PENDIENTE",
+     * and takes it out of the active orders and the live screens
+     * @return True if the order was deleted or new Exception()
+     * */
+    @Override
+    public boolean delete(Long entityId) throws Exception {
+        try {
+
+            Optional<Orden> ordenOpcional = baseRepository.findById(entityId);
+            if (ordenOpcional.isPresent() && TipoEstado.PENDIENTE.es(ordenOpcional.get().getEstado())) {
+                reservaStockService.liberar(entityId);
+            }
+
+            boolean eliminada = super.delete(entityId);
+            eventPublisher.publishEvent(OrdenEvent.eliminada(baseRepository.findById(entityId).get()));
+
+            return eliminada;
+
+        } catch (Exception e) {
+
+            this.rollbackOnly();
+            throw new Exception(e.getMessage());
+
+        }
+    }
+
+    /*
+     * @desc This method restores a soft-deleted order, bringing it back to the active orders and the
+     * live screens if its state is an active one
+     * @return True if the order was restored or new Exception()
+     * */
+    @Override
+    public boolean undoDelete(Long entityId) throws Exception {
+        try {
+
+            boolean restaurada = super.undoDelete(entityId);
+            eventPublisher.publishEvent(OrdenEvent.of(baseRepository.findById(entityId).get(), null));
+
+            return restaurada;
+
+        } catch (Exception e) {
+
+            this.rollbackOnly();
+            throw new Exception(e.getMessage());
+
+        }
+    }
+
+    /*
+     * @desc This method consumes or releases the stock reserved by an order when it leaves "PENDIENTE".
+     * Orders saved before stock reservations existed have their stock removed when they go "EN PROCESO",
+     * and are set to "CANCELADO" if any supply is short
+     * */
+    private void procesarReserva(Orden orden, String estadoAnterior) throws Exception {
+        if (!TipoEstado.PENDIENTE.es(estadoAnterior) || TipoEstado.PENDIENTE.es(orden.getEstado())) {
+            return;
+        }
+
+        if (TipoEstado.CANCELADO.es(orden.getEstado())) {
+            reservaStockService.liberar(orden.getId());
+        } else if (!reservaStockService.consumir(orden.getId()) && TipoEstado.EN_PROCESO.es(orden.getEstado())) {
+            this.descontarSinReserva(orden);
+        }
+    }
+
+    /*
+     * @desc This method removes the stock of an order saved without reservation, setting it to
+     * "CANCELADO" if any supply is short
+     * */
+    private void descontarSinReserva(Orden orden) throws Exception {
+        try {
+            orden.setDetalles(this.removeStock(orden.getDetalles()));
+        } catch (StockInsuficienteException e) {
+            orden.setEstado(estadoRegistry.get(TipoEstado.CANCELADO));
+        }
+    }
+
+    /*
+     * @desc This method updates the state of several orders at once, as actualizarEstado does for each one.
+     * The orders are loaded with one query and the reservations of those leaving "PENDIENTE" are consumed
+     * or released added up by supply, all in the same transaction. Items naming a missing or repeated
+     * order are reported and skipped
+     * @return List<ResultadoCambioEstadoDTO> one result per item, in the same order, or new Exception()
+     * */
+    @Override
+    public List<ResultadoCambioEstadoDTO> actualizarEstados(List<CambioEstadoDTO> cambios) throws Exception {
+        try {
+            Set<Long> ids = new HashSet<>();
+            for (CambioEstadoDTO cambio : cambios) {
+                if (cambio.getOrdenId() != null) {
+                    ids.add(cambio.getOrdenId());
+                }
+            }
+
+            Map<Long, Orden> ordenes = new HashMap<>();
+            for (Orden orden : baseRepository.findAllById(ids)) {
+                ordenes.put(orden.getId(), orden);
+            }
+
+            Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+            Map<Long, String> estadosAnteriores = new LinkedHashMap<>();
+            List<ResultadoCambioEstadoDTO> resultados = new ArrayList<>();
+
+            for (CambioEstadoDTO cambio : cambios) {
+                Orden orden = ordenes.get(cambio.getOrdenId());
+
+                if (orden == null) {
+                    resultados.add(new ResultadoCambioEstadoDTO(cambio.getOrdenId(), false, null, "No existe la orden " + cambio.getOrdenId()));
+                    continue;
+                }
+                if (cambio.getEstado() == null) {
+                    resultados.add(new ResultadoCambioEstadoDTO(orden.getId(), false, null, "Falta el estado"));
+                    continue;
+                }
+                if (estadosAnteriores.containsKey(orden.getId())) {
+                    resultados.add(new ResultadoCambioEstadoDTO(orden.getId(), false, null, "La orden se repite en el lote"));
+                    continue;
+                }
+
+                estadosAnteriores.put(orden.getId(), orden.getEstado() != null ? orden.getEstado().getDenominacion() : null);
+                orden.setEstado(cambio.getEstado());
+
+                if (TipoEstado.DEMORADO.es(cambio.getEstado())) {
+                    Calendar calendar = Calendar.getInstance();
+                    calendar.setTime(orden.getHorarioEntrega());
+                    calendar.add(Calendar.MINUTE, 10);
+                    orden.setHorarioEntrega(calendar.getTime());
+                }
+
+                orden.setUltimaActualizacion(timestamp);
+                resultados.add(new ResultadoCambioEstadoDTO(orden.getId(), true, null, null));
+            }
+
+            /* RESERVAS: orders leaving "PENDIENTE", added up across the whole batch */
+            List<Long> aLiberar = new ArrayList<>();
+            List<Long> aConsumir = new ArrayList<>();
+
+            for (Map.Entry<Long, String> entry : estadosAnteriores.entrySet()) {
+                Orden orden = ordenes.get(entry.getKey());
+                if (TipoEstado.PENDIENTE.es(entry.getValue()) && !TipoEstado.PENDIENTE.es(orden.getEstado())) {
+                    if (TipoEstado.CANCELADO.es(orden.getEstado())) {
+                        aLiberar.add(orden.getId());
+                    } else {
+                        aConsumir.add(orden.getId());
+                    }
+                }
+            }
+
+            reservaStockService.liberar(aLiberar);
+            Set<Long> consumidas = reservaStockService.consumir(aConsumir);
+
+            for (Long id : aConsumir) {
+                Orden orden = ordenes.get(id);
+                if (!consumidas.contains(id) && TipoEstado.EN_PROCESO.es(orden.getEstado())) {
+                    this.descontarSinReserva(orden);
+                }
+            }
+
+            List<Orden> actualizadas = new ArrayList<>();
+            for (Long id : estadosAnteriores.keySet()) {
+                actualizadas.add(ordenes.get(id));
+            }
+
+            for (Orden orden : baseRepository.saveAll(actualizadas)) {
+                eventPublisher.publishEvent(OrdenEvent.of(orden, estadosAnteriores.get(orden.getId())));
+            }
+            countCache.invalidar(domainClass);
+
+            for (ResultadoCambioEstadoDTO resultado : resultados) {
+                if (resultado.isExito()) {
+                    resultado.setEstado(ordenes.get(resultado.getOrdenId()).getEstado().getDenominacion());
+                }
+            }
+
+            return resultados;
+
+        } catch (Exception e) {
+
+            this.rollbackOnly();
             throw new Exception(e.getMessage());
 
         }
@@ -299,42 +554,48 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
 
             orden.setRepartidor(repartidor);
 
-            Specification<Estado> filterByEnCamino = specEstado.findByProperty("denominacion", "en camino");
-            Optional<Estado> estado = estadoRepository.findOne(Specification.where(filterByEnCamino));
+            String estadoAnterior = orden.getEstado() != null ? orden.getEstado().getDenominacion() : null;
+            orden.setEstado(estadoRegistry.get(TipoEstado.EN_CAMINO));
 
-            orden.setEstado(estado.get());
+            this.procesarReserva(orden, estadoAnterior);
 
             orden = baseRepository.save(orden);
+            countCache.invalidar(domainClass);
+            eventPublisher.publishEvent(OrdenEvent.of(orden, estadoAnterior));
 
             return orden;
 
 
         }catch (Exception e){
+            this.rollbackOnly();
             throw new Exception(e.getMessage());
         }
     }
 
 
     /*
-     * @desc This method controls the existence of the product stock
-     * @return False if the stock is insufficient for any product, true if the stock is sufficient
+     * @desc This method controls the existence of the product stock not reserved by pending orders,
+     * reading the current stock of every supply the order needs with one query
+     * @return False if the stock is insufficient for any product, true if the stock is sufficient, or
+     * new Exception() if a manufactured product has no recipe
      * */
     @Override
-    public boolean controlStock(List<DetalleOrden> detalles) {
-        for (DetalleOrden detalleOrdenAux : detalles){
-            if(detalleOrdenAux.getArticuloManufacturado() != null){
-                for (DetalleReceta detalleReceta: detalleOrdenAux.getArticuloManufacturado().getDetallesReceta()){
-                    if (detalleReceta.getInsumo().getStockActual() < (detalleReceta.getCantidad() * detalleOrdenAux.getCantidad())){
-                        return false;
-                    }
-                }
-            }
+    public boolean controlStock(List<DetalleOrden> detalles) throws Exception {
+        Map<Long, Double> consumo = this.calcularConsumo(detalles);
 
-            if(detalleOrdenAux.getInsumo() != null){
-                if (detalleOrdenAux.getInsumo().getStockActual() < detalleOrdenAux.getCantidad()){
-                    return false;
-                }
+        if (consumo.isEmpty()) {
+            return true;
+        }
+
+        List<Object[]> stockDisponible = insumoRepository.getStockDisponible(consumo.keySet());
+
+        if (stockDisponible.size() < consumo.size()) {
+            return false;
+        }
 
+        for (Object[] insumo : stockDisponible) {
+            if (((Number) insumo[1]).doubleValue() < consumo.get((Long) insumo[0])) {
+                return false;
             }
         }
 
@@ -343,134 +604,187 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
 
 
     /*
-     * @desc This method removes the stock of the articles present in the order details
-     * and update articles in the database
-     * @return List<DetallesOrden> detalles or new Exception()
+     * @desc This method removes the stock of the articles present in the order details.
+     * The quantities are aggregated by supply across the whole order and applied as one batch of
+     * conditional updates, followed by one batch of HistorialStock inserts
+     * @return List<DetallesOrden> detalles, new StockInsuficienteException() naming every supply
+     * that was short (no stock is removed in that case) or new Exception()
      * */
     @Override
     public List<DetalleOrden> removeStock(List<DetalleOrden> detalles) throws Exception {
 
         try{
-            Optional<ArticuloInsumo> insumoOptional;
-            ArticuloInsumo articuloInsumo;
-
+            Map<Long, Double> consumo = this.calcularConsumo(detalles);
             Timestamp timestamp = new Timestamp(System.currentTimeMillis());
 
-            for (DetalleOrden detalleOrdenAux : detalles){
-                if (detalleOrdenAux.getArticuloManufacturado() != null){
-
-                    for (DetalleReceta detalleReceta: detalleOrdenAux.getArticuloManufacturado().getDetallesReceta()){
-
-                        insumoOptional = insumoRepository.findById(detalleReceta.getInsumo().getId());
-                        articuloInsumo = insumoOptional.get();
-                        articuloInsumo.setStockActual(articuloInsumo.getStockActual() - (detalleReceta.getCantidad() * detalleOrdenAux.getCantidad()));
-                        articuloInsumo.getHistorialStock().add(new HistorialStock((detalleReceta.getCantidad() * detalleOrdenAux.getCantidad()), timestamp, false));
-                        articuloInsumo.setUltimaActualizacion(timestamp);
-                        articuloInsumo = insumoRepository.save(articuloInsumo);
-                        detalleReceta.setInsumo(articuloInsumo);
-                        detalleReceta.setUltimaActualizacion(timestamp);
-                        detalleOrdenAux.setUltimaActualizacion(timestamp);
-                    }
-                }
+            List<Long> faltantes = insumoRepository.descontarStock(consumo, timestamp);
 
-                if(detalleOrdenAux.getInsumo() != null){
-                    insumoOptional = insumoRepository.findById(detalleOrdenAux.getInsumo().getId());
-                    articuloInsumo = insumoOptional.get();
-                    articuloInsumo.setStockActual(articuloInsumo.getStockActual() - detalleOrdenAux.getCantidad());
-                    articuloInsumo.getHistorialStock().add(new HistorialStock(detalleOrdenAux.getCantidad(), timestamp, false));
-                    articuloInsumo.setUltimaActualizacion(timestamp);
-                    articuloInsumo = insumoRepository.save(articuloInsumo);
-                    detalleOrdenAux.setInsumo(articuloInsumo);
-                    detalleOrdenAux.setUltimaActualizacion(timestamp);
+            if (!faltantes.isEmpty()) {
+                List<String> denominaciones = new ArrayList<>();
+                for (ArticuloInsumo insumo : insumoRepository.findAllById(faltantes)) {
+                    denominaciones.add(insumo.getDenominacion());
                 }
+                throw new StockInsuficienteException(faltantes, denominaciones);
+            }
+
+            insumoRepository.registrarMovimientos(consumo, timestamp, false);
+
+            for (DetalleOrden detalleOrdenAux : detalles){
+                detalleOrdenAux.setUltimaActualizacion(timestamp);
             }
 
             return detalles;
 
+        } catch (StockInsuficienteException e){
+            throw e;
         } catch (Exception e){
             throw new Exception(e.getMessage());
         }
     }
 
     /*
-     * @desc This method gets all the orders paged where state is "EN PROCESO" or "DEMORADO"
-     * @return Map<String, Object> ordenesEnCocina or new Exception()
+     * @desc This method adds up the quantity of each supply needed by the order details,
+     * exploding the recipe of every manufactured product from the RecetaCache
+     * @return Map<Long, Double> cantidad by supply id or new Exception() if a manufactured product has no recipe
      * */
-    @Override
-    public Map<String, Object> ordenesEnCocina(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
+    private Map<Long, Double> calcularConsumo(List<DetalleOrden> detalles) throws Exception {
+        Set<Long> manufacturadoIds = new HashSet<>();
+        for (DetalleOrden detalleOrdenAux : detalles){
+            if (detalleOrdenAux.getArticuloManufacturado() != null){
+                manufacturadoIds.add(detalleOrdenAux.getArticuloManufacturado().getId());
             }
+        }
 
-            Page<Orden> entityPage;
+        Map<Long, RecetaCache.Receta> recetas = recetaCache.getAll(manufacturadoIds);
+        Map<Long, Double> consumo = new HashMap<>();
 
-            SearchSpecification<Orden> spec = new SearchSpecification<Orden>();
-            Specification<Orden> isNotDeleted = spec.isNotDeleted();
+        for (DetalleOrden detalleOrdenAux : detalles){
+            if (detalleOrdenAux.getArticuloManufacturado() != null){
+                RecetaCache.Receta receta = recetas.get(detalleOrdenAux.getArticuloManufacturado().getId());
+                if (receta == null) {
+                    throw new Exception("El articulo manufacturado " + detalleOrdenAux.getArticuloManufacturado().getId() + " no tiene receta");
+                }
+                for (int i = 0; i < receta.size(); i++){
+                    consumo.merge(receta.getInsumo(i), receta.getCantidad(i) * detalleOrdenAux.getCantidad(), Double::sum);
+                }
+            }
 
-            Specification<Orden> filterByDemorado = spec.findByEstado("demorado");
-            Specification<Orden> filterByEnProceso = spec.findByEstado("en proceso");
+            if(detalleOrdenAux.getInsumo() != null){
+                consumo.merge(detalleOrdenAux.getInsumo().getId(), detalleOrdenAux.getCantidad(), Double::sum);
+            }
+        }
 
+        return consumo;
+    }
 
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByEnProceso).or(filterByDemorado)),pageable);
-            } else {
-                Specification<Orden> filterByEstado = spec.findByEstado(filter);
-                Specification<Orden> filterById = spec.findByProperty("descripcion", filter);
-                Specification<Orden> filterByFormaPago = spec.findByProperty("formaPago", filter);
-                Specification<Orden> filterByNombreCliente = spec.findByForeignAttribute("cliente", "nombre", filter);
-                Specification<Orden> filterByApellidoCliente = spec.findByForeignAttribute("cliente", "apellido", filter);
-
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByEnProceso).or(filterByDemorado))
-                        .and(Specification.where(filterByEstado)
-                                .or(filterById)
-                                .or(filterByFormaPago)
-                                .or(filterByNombreCliente)
-                                .or(filterByApellidoCliente)
-                        ), pageable);
+    /*
+     * @desc This method gets all the orders paged where state is "EN PROCESO" or "DEMORADO". The page is
+     *       filtered and sorted over OrdenesActivas and only its orders are loaded, by id
+     * @return Map<String, Object> ordenesEnCocina, new IllegalArgumentException() if sortBy is not
+     *         supported or new Exception()
+     * */
+    @Override
+    public Map<String, Object> ordenesEnCocina(String filter, int page, int size, String sortBy, String direction) throws Exception {
+        try {
+            List<OrdenActivaDTO> enCocina = ordenesActivas.getPorEstado(Arrays.asList(
+                    TipoEstado.EN_PROCESO.getDenominacion(), TipoEstado.DEMORADO.getDenominacion()));
+
+            if (filter != null && !filter.equals("")) {
+                String texto = filter.toLowerCase();
+
+                List<OrdenActivaDTO> filtradas = new ArrayList<>();
+                for (OrdenActivaDTO orden : enCocina) {
+                    if (orden.getEstado().contains(texto)
+                            || (orden.getFormaPago() != null && orden.getFormaPago().toLowerCase().contains(texto))
+                            || searchIndex.coincide(Cliente.class, orden.getClienteId(), filter, "nombre", "apellido")) {
+                        filtradas.add(orden);
+                    }
+                }
+                enCocina = filtradas;
             }
 
-            List<Orden> entities = entityPage.getContent();
+            Comparator<OrdenActivaDTO> orden = this.getOrdenCocina(sortBy);
+            enCocina.sort(direction.equals("desc") ? orden.reversed() : orden);
+
+            int desde = Math.min(page * size, enCocina.size());
+            int hasta = Math.min(desde + size, enCocina.size());
 
             Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
+            response.put("payload", this.cargarOrdenes(enCocina.subList(desde, hasta)));
+            response.put("length", enCocina.size());
 
             return response;
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
+    /*
+     * @desc Order of the kitchen listing by one of the properties kept in OrdenesActivas, then by id
+     * @return Comparator<OrdenActivaDTO> or new IllegalArgumentException() if sortBy is not one of them
+     * */
+    private Comparator<OrdenActivaDTO> getOrdenCocina(String sortBy) {
+        Comparator<OrdenActivaDTO> porId = Comparator.comparing(OrdenActivaDTO::getId);
+
+        switch (sortBy) {
+            case "fecha":
+                return Comparator.comparing(OrdenActivaDTO::getFecha, Comparator.nullsFirst(Comparator.<Date>naturalOrder())).thenComparing(porId);
+            case "horarioEntrega":
+                return Comparator.comparing(OrdenActivaDTO::getHorarioEntrega, Comparator.nullsFirst(Comparator.<Date>naturalOrder())).thenComparing(porId);
+            case "tiempoTotalPreparacion":
+                return Comparator.comparingInt(OrdenActivaDTO::getTiempoTotalPreparacion).thenComparing(porId);
+            case "estado":
+                return Comparator.comparing(OrdenActivaDTO::getEstado).thenComparing(porId);
+            case "id":
+                return porId;
+            default:
+                throw new IllegalArgumentException("No se puede ordenar las ordenes en cocina por " + sortBy);
+        }
+    }
+
+    /*
+     * @desc This method loads the orders of the given summaries with one query by id, in the same order
+     * @return List<Orden> ordenes
+     * */
+    private List<Orden> cargarOrdenes(List<OrdenActivaDTO> resumenes) {
+        List<Long> ids = new ArrayList<>();
+        for (OrdenActivaDTO resumen : resumenes) {
+            ids.add(resumen.getId());
+        }
+
+        Map<Long, Orden> porId = new HashMap<>();
+        for (Orden orden : baseRepository.findAllById(ids)) {
+            porId.put(orden.getId(), orden);
+        }
+
+        List<Orden> ordenes = new ArrayList<>();
+        for (Long id : ids) {
+            Orden orden = porId.get(id);
+            if (orden != null) {
+                ordenes.add(orden);
+            }
+        }
+        return ordenes;
+    }
+
 
     /*
      * @desc This method gets all orders by Cliente where state is "PENDIENTE", "EN PROCESO", "DEMORADO",
-     *       "LISTO" or "EN CAMINO"
+     *       "LISTO" or "EN CAMINO", as kept by OrdenesActivas
      * @return List<Orden> ordenesPendientes or new Exception()
      * */
     @Override
     public List<Orden> getOrdenesPendientes(String clienteUid) throws Exception {
         try{
 
-            SearchSpecification<Orden> spec = new SearchSpecification<Orden>();
-            Specification<Orden> isNotDeleted = spec.isNotDeleted();
-
-            Specification<Orden> filterByCliente = spec.findByForeignAttribute("cliente", "uid", clienteUid);
-            Specification<Orden> filterByPendiente = spec.findByEstado("pendiente");
-            Specification<Orden> filterByEnProceso = spec.findByEstado("en proceso");
-            Specification<Orden> filterByDemorado = spec.findByEstado("demorado");
-            Specification<Orden> filterByListo = spec.findByEstado("listo");
-            Specification<Orden> filterByEnCamino = spec.findByEstado("en camino");
+            UidResolver.Identidad cliente = uidResolver.resolver(clienteUid);
+            if (cliente == null) {
+                return new ArrayList<>();
+            }
 
-            return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByCliente)).and(Specification.where(filterByPendiente)
-                    .or(filterByEnProceso)
-                    .or(filterByDemorado)
-                    .or(filterByListo)
-                    .or(filterByEnCamino)
-            ));
+            return this.cargarOrdenes(ordenesActivas.getPorCliente(cliente.getId()));
 
         } catch (Exception e){
             throw new Exception(e.getMessage());
@@ -485,16 +799,21 @@ public class OrdenServiceImpl extends BaseServiceImpl<Orden, Long> implements Or
     public List<Orden> getOrdenesPasadas(String clienteUid) throws Exception {
         try{
 
+            UidResolver.Identidad cliente = uidResolver.resolver(clienteUid);
+            if (cliente == null) {
+                return new ArrayList<>();
+            }
+
             SearchSpecification<Orden> spec = new SearchSpecification<Orden>();
             Specification<Orden> isNotDeleted = spec.isNotDeleted();
 
-            Specification<Orden> filterByCliente = spec.findByForeignAttribute("cliente", "uid", clienteUid);
-            Specification<Orden> filterByCancelado = spec.findByEstado("cancelado");
-            Specification<Orden> filterByEntregado = spec.findByEstado("entregado");
+            Specification<Orden> filterByCliente = spec.findByForeignId("cliente", cliente.getId());
+            Set<Long> estados = estadoRegistry.buscar(TipoEstado.CANCELADO.getDenominacion());
+            estados.addAll(estadoRegistry.buscar(TipoEstado.ENTREGADO.getDenominacion()));
+            Specification<Orden> filterByCanceladoEntregado = spec.findByForeignIds("estado", estados);
 
             return baseRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByCliente))
-                    .and(Specification.where(filterByCancelado).or(filterByEntregado)
-            ));
+                    .and(filterByCanceladoEntregado));
 
         } catch (Exception e){
             throw new Exception(e.getMessage());
@@ -0,0 +1,199 @@
+package com.delivery.demo.services.orden;
+
+import com.delivery.demo.dtos.OrdenActivaDTO;
+import com.delivery.demo.entities.comprobantes.TipoEstado;
+import com.delivery.demo.events.OrdenEvent;
+import com.delivery.demo.repositories.comprobantes.OrdenRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * @desc In-memory index of the active orders (not delivered nor cancelled) bucketed by state and by
+ *       cliente, with the minutes of the orders in the kitchen. It is loaded on startup, kept up to
+ *       date with the OrdenEvent of every committed change and periodically reloaded, so the kitchen,
+ *       cashier and cliente screens and the delivery estimate read it instead of querying the orders
+ * */
+@Component
+public class OrdenesActivas {
+
+    public static final List<TipoEstado> ESTADOS_ACTIVOS = Collections.unmodifiableList(Arrays.asList(
+            TipoEstado.PENDIENTE, TipoEstado.EN_PROCESO, TipoEstado.DEMORADO, TipoEstado.LISTO, TipoEstado.EN_CAMINO));
+
+    @Autowired
+    OrdenRepository ordenRepository;
+
+    /* Replaced as a whole on every reload, so readers never see it half loaded */
+    private volatile Indice indice = new Indice();
+
+    /*
+     * @desc This method replaces the index with the active orders stored in the database. Changes
+     *       committed meanwhile wait for it and are applied on the new index
+     * */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${delivery.ordenes.reconciliacion-ms:300000}", initialDelayString = "${delivery.ordenes.reconciliacion-ms:300000}")
+    public synchronized void cargar() {
+        List<String> estados = new ArrayList<>();
+        for (TipoEstado tipo : ESTADOS_ACTIVOS) {
+            estados.add(tipo.getDenominacion());
+        }
+
+        Indice nuevo = new Indice();
+        for (OrdenActivaDTO orden : ordenRepository.getOrdenesActivas(estados)) {
+            nuevo.poner(orden);
+        }
+
+        indice = nuevo;
+    }
+
+    /*
+     * @desc This method applies a committed change of an order. It runs before the listeners that
+     *       push the change, so they already see the new state
+     * */
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onOrdenEvent(OrdenEvent event) {
+        indice.quitar(event.getOrdenId());
+
+        if (esActivo(event.getEstadoActual())) {
+            indice.poner(new OrdenActivaDTO(event.getOrdenId(), event.getFecha(), event.getEstadoActual(),
+                    event.getClienteId(), event.getTiempoTotalPreparacion(), event.getHorarioEntrega(),
+                    event.isDelivery(), event.getFormaPago()));
+        }
+    }
+
+    /*
+     * @desc This method gets the active orders in any of the given states, all of them if none is given
+     * @return List<OrdenActivaDTO> ordenes ordered by id
+     * */
+    public List<OrdenActivaDTO> getPorEstado(Collection<String> estados) {
+        Indice actual = indice;
+
+        if (estados == null || estados.isEmpty()) {
+            return ordenar(new ArrayList<>(actual.ordenes.values()));
+        }
+
+        List<Long> ids = new ArrayList<>();
+        for (String estado : estados) {
+            Set<Long> bucket = actual.porEstado.get(normalizar(estado));
+            if (bucket != null) {
+                ids.addAll(bucket);
+            }
+        }
+        return ordenar(actual.buscar(ids));
+    }
+
+    /*
+     * @desc This method gets the active orders of a cliente
+     * @return List<OrdenActivaDTO> ordenes ordered by id
+     * */
+    public List<OrdenActivaDTO> getPorCliente(Long clienteId) {
+        Indice actual = indice;
+        Set<Long> bucket = actual.porCliente.get(clienteId);
+        return bucket == null ? new ArrayList<>() : ordenar(actual.buscar(bucket));
+    }
+
+    /*
+     * @desc This method gets the cooking minutes of the orders "EN PROCESO" or "DEMORADO"
+     * @return long minutos
+     * */
+    public long getMinutosEnCocina() {
+        return indice.minutosEnCocina.get();
+    }
+
+    public static boolean esActivo(String estado) {
+        for (TipoEstado tipo : ESTADOS_ACTIVOS) {
+            if (tipo.es(estado)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean enCocina(String estado) {
+        return TipoEstado.EN_PROCESO.es(estado) || TipoEstado.DEMORADO.es(estado);
+    }
+
+    private static List<OrdenActivaDTO> ordenar(List<OrdenActivaDTO> ordenes) {
+        ordenes.sort(Comparator.comparing(OrdenActivaDTO::getId));
+        return ordenes;
+    }
+
+    private static String normalizar(String estado) {
+        return estado == null ? null : estado.trim().toLowerCase();
+    }
+
+    /* Mutated only by the synchronized methods, read concurrently */
+    private static class Indice {
+        private final Map<Long, OrdenActivaDTO> ordenes = new ConcurrentHashMap<>();
+        private final Map<String, Set<Long>> porEstado = new ConcurrentHashMap<>();
+        private final Map<Long, Set<Long>> porCliente = new ConcurrentHashMap<>();
+        private final AtomicLong minutosEnCocina = new AtomicLong();
+
+        Indice() {
+            for (TipoEstado tipo : ESTADOS_ACTIVOS) {
+                porEstado.put(tipo.getDenominacion(), ConcurrentHashMap.newKeySet());
+            }
+        }
+
+        void poner(OrdenActivaDTO orden) {
+            String estado = normalizar(orden.getEstado());
+            Set<Long> bucket = porEstado.get(estado);
+            if (bucket == null) {
+                return;
+            }
+
+            orden.setEstado(estado);
+            ordenes.put(orden.getId(), orden);
+            bucket.add(orden.getId());
+
+            if (orden.getClienteId() != null) {
+                porCliente.computeIfAbsent(orden.getClienteId(), id -> ConcurrentHashMap.newKeySet()).add(orden.getId());
+            }
+            if (enCocina(estado)) {
+                minutosEnCocina.addAndGet(orden.getTiempoTotalPreparacion());
+            }
+        }
+
+        void quitar(Long id) {
+            OrdenActivaDTO anterior = ordenes.remove(id);
+            if (anterior == null) {
+                return;
+            }
+
+            porEstado.get(anterior.getEstado()).remove(id);
+
+            if (anterior.getClienteId() != null) {
+                Set<Long> bucket = porCliente.get(anterior.getClienteId());
+                if (bucket != null) {
+                    bucket.remove(id);
+                    if (bucket.isEmpty()) {
+                        porCliente.remove(anterior.getClienteId());
+                    }
+                }
+            }
+            if (enCocina(anterior.getEstado())) {
+                minutosEnCocina.addAndGet(-anterior.getTiempoTotalPreparacion());
+            }
+        }
+
+        List<OrdenActivaDTO> buscar(Collection<Long> ids) {
+            List<OrdenActivaDTO> resultado = new ArrayList<>();
+            for (Long id : ids) {
+                OrdenActivaDTO orden = ordenes.get(id);
+                if (orden != null) {
+                    resultado.add(orden);
+                }
+            }
+            return resultado;
+        }
+    }
+}
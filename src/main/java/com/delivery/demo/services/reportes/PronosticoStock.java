@@ -0,0 +1,272 @@
+package com.delivery.demo.services.reportes;
+
+import com.delivery.demo.dtos.PronosticoStockDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.*;
+
+/*
+ * @desc Consumption forecast of the supplies from the outflows of the HistorialStock ledger. Each supply
+ *       keeps its daily outflows of the last days in a fixed ring, so memory does not grow with the
+ *       ledger. A rebuild reads the window of every supply by range on idx_historial_stock_insumo_fecha,
+ *       and a background job then streams only the rows appended since, by primary key. The window is
+ *       rebuilt once a day, which also picks up rows committed after the job had passed their id.
+ *       The report projects the average per day of the week over the available stock
+ * */
+@Component
+public class PronosticoStock {
+
+    private static final String SALIDAS_INSUMO =
+            "SELECT fecha_movimiento, cantidad FROM historial_stock " +
+            "WHERE fk_insumo = ? AND fecha_movimiento >= ? AND operacion = false AND id <= ?";
+
+    private static final String SALIDAS_NUEVAS =
+            "SELECT id, fk_insumo, fecha_movimiento, cantidad FROM historial_stock " +
+            "WHERE id > ? AND operacion = false AND fk_insumo IS NOT NULL ORDER BY id";
+
+    private static final String NIVELES_STOCK =
+            "SELECT id, denominacion, stock_actual - stock_reservado, stock_minimo, stock_maximo " +
+            "FROM articulo_insumo WHERE eliminado = false ORDER BY id";
+
+    /* Days ahead the stock is projected, a supply lasting longer has no date */
+    private static final int HORIZONTE = 365;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Value("${delivery.stock.pronostico-ventana-dias:28}")
+    int ventana;
+
+    @Value("${delivery.stock.pronostico-reposicion-dias:7}")
+    int reposicion;
+
+    /* Streams the result set row by row instead of buffering it (MySQL driver) */
+    private JdbcTemplate lectura;
+
+    private Map<Long, Consumo> consumos = new HashMap<>();
+    private long ultimoId = Long.MAX_VALUE;
+    private volatile long diaReconstruido = Long.MIN_VALUE;
+
+    @PostConstruct
+    public void init() {
+        lectura = new JdbcTemplate(dataSource);
+        lectura.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    /*
+     * @desc This method recomputes the window of every supply from the ledger, then applies the rows
+     *       appended meanwhile
+     * */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        long hoy = LocalDate.now().toEpochDay();
+        Timestamp desde = Timestamp.valueOf(LocalDate.ofEpochDay(hoy - ventana).atStartOfDay());
+        Long hasta = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM historial_stock", Long.class);
+
+        Map<Long, Consumo> nuevos = new HashMap<>();
+        for (Long insumoId : jdbcTemplate.queryForList("SELECT id FROM articulo_insumo", Long.class)) {
+            Consumo consumo = new Consumo(ventana);
+            lectura.query(SALIDAS_INSUMO,
+                    (RowCallbackHandler) rs -> consumo.agregar(dia(rs.getTimestamp(1)), rs.getDouble(2)),
+                    insumoId, desde, hasta);
+            nuevos.put(insumoId, consumo);
+        }
+
+        synchronized (this) {
+            consumos = nuevos;
+            ultimoId = hasta;
+            diaReconstruido = hoy;
+            this.leerNuevas();
+        }
+    }
+
+    /*
+     * @desc This method adds the outflows appended to the ledger since the last run
+     * */
+    @Scheduled(fixedDelayString = "${delivery.stock.pronostico-ms:3600000}", initialDelayString = "${delivery.stock.pronostico-ms:3600000}")
+    public void actualizar() {
+        if (diaReconstruido != LocalDate.now().toEpochDay()) {
+            this.reconstruir();
+            return;
+        }
+
+        synchronized (this) {
+            this.leerNuevas();
+        }
+    }
+
+    /*
+     * @desc This method projects the consumption of every supply not deleted
+     * @return List<PronosticoStockDTO> pronosticos, the ones reaching their minimum first, optionally only
+     *         the ones to restock
+     * */
+    public List<PronosticoStockDTO> getPronostico(boolean soloReponer) {
+        long hoy = LocalDate.now().toEpochDay();
+        List<PronosticoStockDTO> pronosticos = new ArrayList<>();
+
+        jdbcTemplate.query(NIVELES_STOCK, (RowCallbackHandler) rs -> {
+            Long insumoId = rs.getLong(1);
+
+            double consumoDiario = 0;
+            double[] porDiaSemana = new double[7];
+            synchronized (this) {
+                Consumo consumo = consumos.get(insumoId);
+                if (consumo != null) {
+                    consumoDiario = consumo.media(hoy);
+                    porDiaSemana = consumo.porDiaSemana(hoy);
+                }
+            }
+
+            PronosticoStockDTO pronostico = this.proyectar(insumoId, rs.getString(2), rs.getDouble(3),
+                    rs.getDouble(4), rs.getDouble(5), consumoDiario, porDiaSemana, hoy);
+
+            if (!soloReponer || pronostico.isReponer()) {
+                pronosticos.add(pronostico);
+            }
+        });
+
+        pronosticos.sort(Comparator.comparing(PronosticoStockDTO::getDiasHastaMinimo, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(PronosticoStockDTO::getInsumoId));
+        return pronosticos;
+    }
+
+    private PronosticoStockDTO proyectar(Long insumoId, String denominacion, double disponible, double minimo,
+                                         double maximo, double consumoDiario, double[] porDiaSemana, long hoy) {
+        Integer diasHastaMinimo = this.diasHasta(disponible, minimo, porDiaSemana, consumoDiario, hoy);
+        Integer diasHastaAgotarse = this.diasHasta(disponible, 0, porDiaSemana, consumoDiario, hoy);
+
+        boolean reponer = diasHastaMinimo != null && diasHastaMinimo <= reposicion;
+        double cantidadSugerida = 0;
+
+        if (reponer) {
+            /* Stock expected when the order arrives, refilled up to stockMaximo */
+            double consumoReposicion = 0;
+            for (int d = 0; d < reposicion; d++) {
+                consumoReposicion += porDiaSemana[diaSemana(hoy + d)];
+            }
+            cantidadSugerida = Math.max(0, maximo - Math.max(0, disponible - consumoReposicion));
+        }
+
+        return new PronosticoStockDTO(insumoId, denominacion, disponible, minimo, maximo, consumoDiario,
+                porDiaSemana, diasHastaMinimo, diasHastaAgotarse, reponer, cantidadSugerida);
+    }
+
+    /*
+     * @desc Days until the stock goes below the limit consuming the average of each day of the week
+     * @return Integer days, 0 if it is already below and null if it lasts beyond the horizon
+     * */
+    private Integer diasHasta(double stock, double limite, double[] porDiaSemana, double consumoDiario, long hoy) {
+        if (stock < limite) {
+            return 0;
+        }
+        if (consumoDiario <= 0) {
+            return null;
+        }
+
+        double restante = stock - limite;
+        for (int d = 0; d < HORIZONTE; d++) {
+            restante -= porDiaSemana[diaSemana(hoy + d)];
+            if (restante < 0) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+    private void leerNuevas() {
+        long[] ultimo = {ultimoId};
+
+        lectura.query(SALIDAS_NUEVAS, (RowCallbackHandler) rs -> {
+            long insumoId = rs.getLong(2);
+            consumos.computeIfAbsent(insumoId, id -> new Consumo(ventana))
+                    .agregar(dia(rs.getTimestamp(3)), rs.getDouble(4));
+            ultimo[0] = rs.getLong(1);
+        }, ultimoId);
+
+        ultimoId = ultimo[0];
+    }
+
+    private static long dia(Timestamp fecha) {
+        return fecha.toLocalDateTime().toLocalDate().toEpochDay();
+    }
+
+    private static int diaSemana(long dia) {
+        return LocalDate.ofEpochDay(dia).getDayOfWeek().getValue() - 1;
+    }
+
+    /*
+     * Outflows of one supply per day, in a ring of the window plus the current day. A slot holding an
+     * older day is reset when a newer day reaches it
+     * */
+    private static class Consumo {
+        private final long[] dias;
+        private final double[] cantidades;
+
+        Consumo(int ventana) {
+            dias = new long[ventana + 1];
+            cantidades = new double[ventana + 1];
+            Arrays.fill(dias, Long.MIN_VALUE);
+        }
+
+        void agregar(long dia, double cantidad) {
+            int slot = (int) Math.floorMod(dia, (long) dias.length);
+            if (dias[slot] > dia) {
+                return;
+            }
+            if (dias[slot] != dia) {
+                dias[slot] = dia;
+                cantidades[slot] = 0;
+            }
+            cantidades[slot] += cantidad;
+        }
+
+        /*
+         * Moving average of the daily outflow over the complete days of the window
+         * */
+        double media(long hoy) {
+            double total = 0;
+            for (long dia = hoy - (dias.length - 1); dia < hoy; dia++) {
+                total += this.en(dia);
+            }
+            return total / (dias.length - 1);
+        }
+
+        /*
+         * Average outflow of each day of the week over the complete days of the window
+         * */
+        double[] porDiaSemana(long hoy) {
+            double[] totales = new double[7];
+            int[] ocurrencias = new int[7];
+
+            for (long dia = hoy - (dias.length - 1); dia < hoy; dia++) {
+                int diaSemana = diaSemana(dia);
+                totales[diaSemana] += this.en(dia);
+                ocurrencias[diaSemana]++;
+            }
+
+            for (int i = 0; i < 7; i++) {
+                totales[i] = ocurrencias[i] > 0 ? totales[i] / ocurrencias[i] : 0;
+            }
+            return totales;
+        }
+
+        private double en(long dia) {
+            int slot = (int) Math.floorMod(dia, (long) dias.length);
+            return dias[slot] == dia ? cantidades[slot] : 0;
+        }
+    }
+}
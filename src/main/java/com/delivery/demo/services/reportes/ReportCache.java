@@ -0,0 +1,156 @@
+package com.delivery.demo.services.reportes;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * @desc Results of the dashboard reports keyed by report, date range and parameters. A range that
+ *       ended before today can only change through a factura of an orden inside it, so it is kept
+ *       until one is billed or voided; a range that includes today also expires after a short TTL.
+ *       Hits and misses are counted for the /reportes/cache endpoint
+ * */
+@Component
+public class ReportCache {
+
+    /* Distinct ranges kept, every date picked on the dashboard is a new key */
+    private static final int MAX_ENTRADAS = 500;
+
+    private static final long UN_DIA = 24L * 60 * 60 * 1000;
+
+    @Value("${delivery.reportes.cache-ttl-ms:60000}")
+    long ttl;
+
+    private final Map<String, Entrada> entradas = new ConcurrentHashMap<>();
+
+    /* Bumped by every invalidation, a result computed across one is not stored */
+    private final AtomicLong generacion = new AtomicLong();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+
+    /*
+     * @desc This method gets a report for the range, running it only when it is not cached
+     * @return T result of the report
+     * */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String reporte, Date fechaInicio, Date fechaFin, Object parametros, Callable<T> calcular) throws Exception {
+        String clave = reporte + "|" + fechaInicio.getTime() + "|" + fechaFin.getTime() + "|" + parametros;
+
+        Entrada entrada = entradas.get(clave);
+        if (entrada != null && System.currentTimeMillis() < entrada.vence) {
+            aciertos.incrementAndGet();
+            return (T) entrada.valor;
+        }
+
+        fallos.incrementAndGet();
+        long inicio = generacion.get();
+        T valor = calcular.call();
+
+        if (generacion.get() == inicio) {
+            if (entradas.size() >= MAX_ENTRADAS) {
+                entradas.clear();
+            }
+            entradas.put(clave, new Entrada(valor, fechaInicio.getTime(), fechaFin.getTime() + UN_DIA, this.vencimiento(fechaFin)));
+        }
+
+        return valor;
+    }
+
+    /*
+     * @desc This method discards the cached ranges that include the given date, now and once the
+     *       current transaction completes
+     * */
+    public void invalidar(Date fecha) {
+        if (fecha == null) {
+            return;
+        }
+
+        long momento = fecha.getTime();
+        this.descartar(momento);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    descartar(momento);
+                }
+            });
+        }
+    }
+
+    /*
+     * @desc This method discards every cached report, now and once the current transaction completes
+     * */
+    public void invalidarTodo() {
+        this.descartar(Long.MIN_VALUE);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    descartar(Long.MIN_VALUE);
+                }
+            });
+        }
+    }
+
+    /*
+     * @desc This method gets the usage of the cache
+     * @return Map<String, Object> hits, misses, hit ratio and number of cached reports
+     * */
+    public Map<String, Object> getEstadisticas() {
+        long hits = aciertos.get();
+        long misses = fallos.get();
+
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("aciertos", hits);
+        estadisticas.put("fallos", misses);
+        estadisticas.put("tasaAciertos", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        estadisticas.put("entradas", entradas.size());
+        return estadisticas;
+    }
+
+    /* Long.MIN_VALUE discards every range */
+    private void descartar(long momento) {
+        generacion.incrementAndGet();
+        if (momento == Long.MIN_VALUE) {
+            entradas.clear();
+        } else {
+            entradas.values().removeIf(entrada -> entrada.desde <= momento && momento < entrada.hasta);
+        }
+    }
+
+    private long vencimiento(Date fechaFin) {
+        Calendar hoy = Calendar.getInstance();
+        hoy.set(Calendar.HOUR_OF_DAY, 0);
+        hoy.set(Calendar.MINUTE, 0);
+        hoy.set(Calendar.SECOND, 0);
+        hoy.set(Calendar.MILLISECOND, 0);
+
+        if (fechaFin.getTime() < hoy.getTimeInMillis()) {
+            return Long.MAX_VALUE;
+        }
+        return System.currentTimeMillis() + ttl;
+    }
+
+    private static class Entrada {
+        private final Object valor;
+        private final long desde;
+        private final long hasta;
+        private final long vence;
+
+        Entrada(Object valor, long desde, long hasta, long vence) {
+            this.valor = valor;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.vence = vence;
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package com.delivery.demo.services.reportes;
 
 import com.delivery.demo.dtos.GraficosDTO;
+import com.delivery.demo.dtos.PronosticoStockDTO;
+import com.delivery.demo.dtos.StockHistoricoDTO;
 import com.delivery.demo.entities.comprobantes.Orden;
 
 import java.sql.Date;
 import java.util.List;
+import java.util.Map;
 
 public interface ReportesService {
     public List<GraficosDTO> getOutOfStock() throws Exception;
     public List<Orden> getOrdenesPorPeriodo(String clienteUid, Date fechaInicio, Date fechaFin) throws Exception;
     public List<GraficosDTO> getIngresosPorPeriodo(Date fechaInicio, Date fechaFin) throws Exception;
-    public List<GraficosDTO> getInsumoMasVendido(Date fechaInicio, Date fechaFin) throws Exception;
-    public List<GraficosDTO> getManufacturadoMasVendido(Date fechaInicio, Date fechaFin) throws Exception;
+    public List<GraficosDTO> getInsumoMasVendido(Date fechaInicio, Date fechaFin, Integer top) throws Exception;
+    public List<GraficosDTO> getManufacturadoMasVendido(Date fechaInicio, Date fechaFin, Integer top) throws Exception;
     public List<GraficosDTO> getOrdenesPorCliente(Date fechaInicio, Date fechaFin) throws Exception;
+    public void reconstruirVentas(Date fechaInicio, Date fechaFin) throws Exception;
+    public List<StockHistoricoDTO> getStockAl(Date fecha) throws Exception;
+    public int tomarSnapshotStock() throws Exception;
+    public List<PronosticoStockDTO> getPronosticoStock(boolean soloReponer) throws Exception;
+    public void reconstruirPronosticoStock() throws Exception;
+    public Map<String, Object> getEstadisticasCache() throws Exception;
 }
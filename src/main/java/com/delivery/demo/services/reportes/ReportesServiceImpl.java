@@ -1,29 +1,33 @@
 package com.delivery.demo.services.reportes;
 
+import com.delivery.demo.dtos.AlertaStockDTO;
 import com.delivery.demo.dtos.GraficosDTO;
-import com.delivery.demo.entities.articulos.ArticuloInsumo;
-import com.delivery.demo.entities.comprobantes.Factura;
+import com.delivery.demo.dtos.PronosticoStockDTO;
+import com.delivery.demo.dtos.StockHistoricoDTO;
 import com.delivery.demo.entities.comprobantes.Orden;
-import com.delivery.demo.repositories.articulos.ArticuloInsumoRepository;
-import com.delivery.demo.repositories.articulos.ArticuloManufacturadoRepository;
+import com.delivery.demo.entities.comprobantes.TipoEstado;
 import com.delivery.demo.repositories.comprobantes.FacturaRepository;
 import com.delivery.demo.repositories.comprobantes.OrdenRepository;
-import com.delivery.demo.repositories.usuarios.UsuarioRepository;
+import com.delivery.demo.repositories.reportes.OrdenesClienteDiariaRepository;
+import com.delivery.demo.repositories.reportes.VentaArticuloDiariaRepository;
+import com.delivery.demo.services.insumo.AlertasStock;
+import com.delivery.demo.services.usuario.UidResolver;
 import com.delivery.demo.specifications.SearchSpecification;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.sql.Date;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ReportesServiceImpl implements ReportesService {
 
-    @Autowired
-    ArticuloInsumoRepository insumoRepository;
-
     @Autowired
     OrdenRepository ordenRepository;
 
@@ -31,29 +35,43 @@ public class ReportesServiceImpl implements ReportesService {
     FacturaRepository facturaRepository;
 
     @Autowired
-    ArticuloManufacturadoRepository manufacturadoRepository;
+    VentaArticuloDiariaRepository ventaArticuloRepository;
+
+    @Autowired
+    OrdenesClienteDiariaRepository ordenesClienteRepository;
+
+    @Autowired
+    VentasRollup ventasRollup;
+
+    @Autowired
+    SnapshotsStock snapshotsStock;
+
+    @Autowired
+    AlertasStock alertasStock;
+
+    @Autowired
+    PronosticoStock pronosticoStock;
 
     @Autowired
-    UsuarioRepository usuarioRepository;
+    ReportCache reportCache;
+
+    @Value("${delivery.reportes.top:5}")
+    int topPorDefecto;
+
+    @Value("${delivery.reportes.top-max:50}")
+    int topMaximo;
+
+    @Autowired
+    UidResolver uidResolver;
 
     @Override
     public List<GraficosDTO> getOutOfStock() throws Exception {
         try{
 
-            SearchSpecification<ArticuloInsumo> spec = new SearchSpecification<ArticuloInsumo>();
-            Specification<ArticuloInsumo> isNotDeleted = spec.isNotDeleted();
-
-            Specification<ArticuloInsumo> filterByOutOfStock = spec.findByOutOfStock();
-            List<ArticuloInsumo> insumos = insumoRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(filterByOutOfStock)));
-
             List<GraficosDTO> graficosDTOS = new ArrayList<>();
-            GraficosDTO aux;
 
-            for (ArticuloInsumo articulo: insumos) {
-                aux = new GraficosDTO();
-                aux.setName(articulo.getDenominacion());
-                aux.setValue(articulo.getStockActual());
-                graficosDTOS.add(aux);
+            for (AlertaStockDTO insumo : alertasStock.getBajoMinimo()) {
+                graficosDTOS.add(new GraficosDTO(insumo.getDenominacion(), insumo.getStockActual()));
             }
 
             return graficosDTOS;
@@ -67,10 +85,15 @@ public class ReportesServiceImpl implements ReportesService {
     public List<Orden> getOrdenesPorPeriodo(String clienteUid, Date fechaInicio, Date fechaFin) throws Exception {
         try{
 
+            UidResolver.Identidad cliente = uidResolver.resolver(clienteUid);
+            if (cliente == null) {
+                return new ArrayList<>();
+            }
+
             SearchSpecification<Orden> spec = new SearchSpecification<Orden>();
             Specification<Orden> isNotDeleted = spec.isNotDeleted();
 
-            Specification<Orden> filterByCliente = spec.findByForeignAttribute("cliente", "uid", clienteUid);
+            Specification<Orden> filterByCliente = spec.findByForeignId("cliente", cliente.getId());
             Specification<Orden> betweenDates = spec.findBetweenDates(fechaInicio, fechaFin);
             List<Orden> ordenes = ordenRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(betweenDates).and(filterByCliente)));
 
@@ -84,73 +107,170 @@ public class ReportesServiceImpl implements ReportesService {
     @Override
     public List<GraficosDTO> getIngresosPorPeriodo(Date fechaInicio, Date fechaFin) throws Exception {
         try{
+            return reportCache.get("ingresos", fechaInicio, fechaFin, null, () -> {
+                /* Aggregated by the database, a single row whatever the length of the period */
+                Object[] totales = facturaRepository.getIngresos(fechaInicio, fechaFin, TipoEstado.PAGADO.getDenominacion()).get(0);
 
-            SearchSpecification<Factura> spec = new SearchSpecification<Factura>();
-            Specification<Factura> isNotDeleted = spec.isNotDeleted();
+                double cantidad = ((Number) totales[0]).doubleValue();
+                double ingresos = ((Number) totales[1]).doubleValue();
 
-            Specification<Factura> betweenDates = spec.findBetweenDates(fechaInicio, fechaFin);
-            Specification<Factura> filterByEstado = spec.findByEstado("pagado");
-            List<Factura> facturas = facturaRepository.findAll(Specification.where(isNotDeleted).and(Specification.where(betweenDates).and(filterByEstado)));
+                List<GraficosDTO> graficosDTOS = new ArrayList<>();
 
-            double ingresos = 0;
-            double cantidad = 0;
+                graficosDTOS.add(new GraficosDTO("ORDENES", cantidad));
+                graficosDTOS.add(new GraficosDTO("INGRESOS", ingresos));
 
-            for (Factura factura: facturas) {
-                ingresos+= factura.getOrden().getTotal();
-                cantidad ++;
-            }
+                return graficosDTOS;
+            });
+        } catch (Exception e){
+            throw new Exception(e.getMessage());
+        }
+    }
 
-            List<GraficosDTO> graficosDTOS = new ArrayList<>();
+    @Override
+    public List<GraficosDTO> getInsumoMasVendido(Date fechaInicio, Date fechaFin, Integer top) throws Exception {
+        try {
+            int cantidad = this.getTop(top);
+            return reportCache.get("topInsumos", fechaInicio, fechaFin, cantidad, () -> {
+                List<Object[]> objects = ventaArticuloRepository.getInsumosMasVendidos(fechaInicio, fechaFin, PageRequest.of(0, cantidad));
+                List<GraficosDTO> insumosMasVendidos = new ArrayList<>();
+                for (Object[] object: objects) {
+                    insumosMasVendidos.add(new GraficosDTO(object[0].toString(), (double) object[1]));
+                }
+                return insumosMasVendidos;
+            });
+        } catch (Exception e){
+            throw new Exception(e.getMessage());
+        }
+    }
 
-            graficosDTOS.add(new GraficosDTO("ORDENES", cantidad));
-            graficosDTOS.add(new GraficosDTO("INGRESOS", ingresos));
+    @Override
+    public List<GraficosDTO> getManufacturadoMasVendido(Date fechaInicio, Date fechaFin, Integer top) throws Exception {
+        try {
+            int cantidad = this.getTop(top);
+            return reportCache.get("topManufacturados", fechaInicio, fechaFin, cantidad, () -> {
+                List<Object[]> objects = ventaArticuloRepository.getManufacturadosMasVendidos(fechaInicio, fechaFin, PageRequest.of(0, cantidad));
+                List<GraficosDTO> manufacturadosMasVendidos = new ArrayList<>();
+                for (Object[] object: objects) {
+                    manufacturadosMasVendidos.add(new GraficosDTO(object[0].toString(), (double) object[1]));
+                }
+                return manufacturadosMasVendidos;
+            });
+        } catch (Exception e){
+            throw new Exception(e.getMessage());
+        }
+    }
 
-            return graficosDTOS;
+    @Override
+    public List<GraficosDTO> getOrdenesPorCliente(Date fechaInicio, Date fechaFin) throws Exception {
+        try {
+            return reportCache.get("cantidadOrdenes", fechaInicio, fechaFin, null, () -> {
+                List<Object[]> objects = ordenesClienteRepository.getOrdenes(fechaInicio, fechaFin);
+                List<GraficosDTO> cantidadOrdenes = new ArrayList<>();
+                for (Object[] object: objects) {
+                    cantidadOrdenes.add(new GraficosDTO(object[0].toString(), Double.parseDouble(object[1].toString())));
+                }
+                return cantidadOrdenes;
+            });
+        } catch (Exception e){
+            throw new Exception(e.getMessage());
+        }
+    }
 
+    /*
+     * @desc This method recomputes the daily sales rollups between both dates, or all of them when
+     *       no dates are given
+     * */
+    @Override
+    public void reconstruirVentas(Date fechaInicio, Date fechaFin) throws Exception {
+        try {
+            ventasRollup.reconstruir(fechaInicio, fechaFin);
+            reportCache.invalidarTodo();
         } catch (Exception e){
             throw new Exception(e.getMessage());
         }
     }
 
+    /*
+     * @desc This method gets the stock every supply had at the end of the given day, replayed from the
+     *       latest stock snapshot before it
+     * @return List<StockHistoricoDTO> stock of every supply or new Exception()
+     * */
     @Override
-    public List<GraficosDTO> getInsumoMasVendido(Date fechaInicio, Date fechaFin) throws Exception {
+    public List<StockHistoricoDTO> getStockAl(Date fecha) throws Exception {
         try {
-            List<Object[]> objects = insumoRepository.getMasVendidos(fechaInicio, fechaFin);
-            List<GraficosDTO> insumosMasVendidos = new ArrayList<>();
-            for (Object[] object: objects) {
-                insumosMasVendidos.add(new GraficosDTO(object[0].toString(), (double) object[1]));
-            }
-            return insumosMasVendidos;
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(fecha);
+            calendar.add(Calendar.DATE, 1);
+
+            return snapshotsStock.getStockAl(calendar.getTime());
         } catch (Exception e){
             throw new Exception(e.getMessage());
         }
     }
 
+    /*
+     * @desc This method checkpoints the stock of every supply now, besides the scheduled snapshots
+     * @return int snapshots written or new Exception()
+     * */
     @Override
-    public List<GraficosDTO> getManufacturadoMasVendido(Date fechaInicio, Date fechaFin) throws Exception {
+    public int tomarSnapshotStock() throws Exception {
         try {
-            List<Object[]> objects = manufacturadoRepository.getMasVendidos(fechaInicio, fechaFin);
-            List<GraficosDTO> manufacturadosMasVendidos = new ArrayList<>();
-            for (Object[] object: objects) {
-                manufacturadosMasVendidos.add(new GraficosDTO(object[0].toString(), (double) object[1]));
-            }
-            return manufacturadosMasVendidos;
+            return snapshotsStock.tomarSnapshot();
         } catch (Exception e){
             throw new Exception(e.getMessage());
         }
     }
 
+    /*
+     * @desc This method gets the consumption forecast of every supply, computed in the background from
+     *       the ledger outflows
+     * @return List<PronosticoStockDTO> pronosticos, optionally only the supplies to restock, or new Exception()
+     * */
     @Override
-    public List<GraficosDTO> getOrdenesPorCliente(Date fechaInicio, Date fechaFin) throws Exception {
+    public List<PronosticoStockDTO> getPronosticoStock(boolean soloReponer) throws Exception {
         try {
-            List<Object[]> objects = usuarioRepository.getOrdenes(fechaInicio, fechaFin);
-            List<GraficosDTO> cantidadOrdenes = new ArrayList<>();
-            for (Object[] object: objects) {
-                cantidadOrdenes.add(new GraficosDTO(object[0].toString(), Double.parseDouble(object[1].toString())));
-            }
-            return cantidadOrdenes;
+            return pronosticoStock.getPronostico(soloReponer);
         } catch (Exception e){
             throw new Exception(e.getMessage());
         }
     }
+
+    /*
+     * @desc This method recomputes the consumption forecast window from the ledger
+     * */
+    @Override
+    public void reconstruirPronosticoStock() throws Exception {
+        try {
+            pronosticoStock.reconstruir();
+        } catch (Exception e){
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    /*
+     * @desc This method gets the hits and misses of the report cache
+     * @return Map<String, Object> usage of the cache
+     * */
+    @Override
+    public Map<String, Object> getEstadisticasCache() throws Exception {
+        try {
+            return reportCache.getEstadisticas();
+        } catch (Exception e){
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    /*
+     * @desc Number of articles of the top seller reports: the requested one, at most the configured
+     * maximum, or the configured default
+     * */
+    private int getTop(Integer top) throws Exception {
+        if (top == null) {
+            return topPorDefecto;
+        }
+        if (top < 1) {
+            throw new Exception("El top debe ser mayor a cero");
+        }
+        return Math.min(top, topMaximo);
+    }
 }
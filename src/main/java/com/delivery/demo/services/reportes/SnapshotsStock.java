@@ -0,0 +1,87 @@
+package com.delivery.demo.services.reportes;
+
+import com.delivery.demo.dtos.StockHistoricoDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/*
+ * @desc Point-in-time stock from the HistorialStock ledger. A scheduled job checkpoints the stock of
+ *       every supply into snapshot_stock, so the stock at any instant is the latest checkpoint before it
+ *       plus the movements in between, read by range on idx_historial_stock_insumo_fecha, instead of
+ *       every movement since the supply was created. Checkpoints are taken a margin in the past so
+ *       transactions still running are not left out of them
+ * */
+@Component
+public class SnapshotsStock {
+
+    /*
+     * Stock of every supply at an instant: the latest checkpoint at or before it, found through the
+     * unique key, plus the tail of movements from the checkpoint up to the instant (excluded)
+     * */
+    private static final String STOCK_AL =
+            "SELECT b.id, b.denominacion, b.stock_actual, COALESCE(b.stock, 0) + " +
+            "COALESCE(SUM(CASE WHEN h.operacion THEN h.cantidad ELSE -h.cantidad END), 0) " +
+            "FROM (SELECT i.id, i.denominacion, i.stock_actual, i.eliminado, s.fecha, s.stock FROM articulo_insumo i " +
+            "LEFT JOIN snapshot_stock s ON s.fk_insumo = i.id AND s.fecha = " +
+            "(SELECT MAX(x.fecha) FROM snapshot_stock x WHERE x.fk_insumo = i.id AND x.fecha <= ?)) b " +
+            "LEFT JOIN historial_stock h ON h.fk_insumo = b.id AND h.fecha_movimiento < ? " +
+            "AND (b.fecha IS NULL OR h.fecha_movimiento >= b.fecha) " +
+            "WHERE (? OR b.eliminado = false) " +
+            "GROUP BY b.id, b.denominacion, b.stock_actual, b.stock " +
+            "ORDER BY b.id";
+
+    private static final String INSERTAR_SNAPSHOT =
+            "INSERT INTO snapshot_stock (fk_insumo, fecha, stock, oculto, eliminado, ultima_actualizacion) " +
+            "VALUES (?, ?, ?, false, false, ?) " +
+            "ON DUPLICATE KEY UPDATE stock = VALUES(stock), ultima_actualizacion = VALUES(ultima_actualizacion)";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Value("${delivery.stock.snapshot-margen-ms:60000}")
+    long margen;
+
+    /*
+     * @desc This method checkpoints the stock of every supply, deleted ones included
+     * @return int checkpoints written
+     * */
+    @Scheduled(fixedDelayString = "${delivery.stock.snapshot-ms:86400000}", initialDelayString = "${delivery.stock.snapshot-ms:86400000}")
+    public int tomarSnapshot() {
+        long ahora = System.currentTimeMillis();
+        Timestamp fecha = new Timestamp(ahora - margen);
+        Timestamp timestamp = new Timestamp(ahora);
+
+        List<Object[]> filas = new ArrayList<>();
+        for (StockHistoricoDTO stock : this.consultar(fecha, true)) {
+            filas.add(new Object[]{stock.getInsumoId(), fecha, stock.getStock(), timestamp});
+        }
+
+        if (!filas.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERTAR_SNAPSHOT, filas);
+        }
+
+        return filas.size();
+    }
+
+    /*
+     * @desc This method replays the ledger to get the stock of every supply not deleted at the given instant
+     * @return List<StockHistoricoDTO> stock of every supply, by id
+     * */
+    public List<StockHistoricoDTO> getStockAl(Date fecha) {
+        return this.consultar(new Timestamp(fecha.getTime()), false);
+    }
+
+    private List<StockHistoricoDTO> consultar(Timestamp fecha, boolean eliminados) {
+        return jdbcTemplate.query(STOCK_AL, (rs, fila) -> new StockHistoricoDTO(
+                rs.getLong(1), rs.getString(2), rs.getDouble(4), rs.getDouble(3)),
+                fecha, fecha, eliminados);
+    }
+}
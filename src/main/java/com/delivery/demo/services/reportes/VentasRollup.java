@@ -0,0 +1,220 @@
+package com.delivery.demo.services.reportes;
+
+import com.delivery.demo.entities.comprobantes.DetalleOrden;
+import com.delivery.demo.entities.comprobantes.Orden;
+import com.delivery.demo.entities.comprobantes.TipoEstado;
+import com.delivery.demo.repositories.reportes.OrdenesClienteDiariaRepository;
+import com.delivery.demo.repositories.reportes.VentaArticuloDiariaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.*;
+
+/*
+ * @desc Daily sales rollups read by the dashboard reports: quantity and revenue per article and
+ *       number of orders per cliente, bucketed by the day of the orden fecha. Billing an orden adds
+ *       it to its buckets and voiding or deleting the factura subtracts it, in the same transaction. Buckets are
+ *       upserted in the database, so concurrent facturas of the same day never lose an update.
+ *       reconstruir() recomputes a range of days from the billed orders
+ * */
+@Component
+public class VentasRollup {
+
+    private static final String ACUMULAR_ARTICULO =
+            "INSERT INTO venta_articulo_diaria (dia, manufacturado, fk_articulo, cantidad, ingresos, oculto, eliminado, ultima_actualizacion) " +
+            "VALUES (DATE(?), ?, ?, ?, ?, false, false, ?) " +
+            "ON DUPLICATE KEY UPDATE cantidad = cantidad + VALUES(cantidad), ingresos = ingresos + VALUES(ingresos), ultima_actualizacion = VALUES(ultima_actualizacion)";
+
+    private static final String ACUMULAR_CLIENTE =
+            "INSERT INTO ordenes_cliente_diaria (dia, fk_cliente, ordenes, oculto, eliminado, ultima_actualizacion) " +
+            "VALUES (DATE(?), ?, ?, false, false, ?) " +
+            "ON DUPLICATE KEY UPDATE ordenes = ordenes + VALUES(ordenes), ultima_actualizacion = VALUES(ultima_actualizacion)";
+
+    /* Lines of the billed orders grouped by day and article, the insumo or the manufacturado is null */
+    private static final String VENTAS_FACTURADAS =
+            "SELECT FUNCTION('DATE', o.fecha), i.id, m.id, SUM(d.cantidad), SUM(d.precioTotal) " +
+            "FROM Factura f JOIN f.orden o JOIN f.estado e JOIN o.detalles d LEFT JOIN d.insumo i LEFT JOIN d.articuloManufacturado m " +
+            "WHERE f.eliminado = false AND e.denominacion = :estado AND o.fecha >= :inicio AND o.fecha < :fin " +
+            "AND FUNCTION('DATE', o.fecha) BETWEEN :desde AND :hasta " +
+            "GROUP BY FUNCTION('DATE', o.fecha), i.id, m.id";
+
+    private static final String ORDENES_FACTURADAS =
+            "SELECT FUNCTION('DATE', o.fecha), c.id, COUNT(o) " +
+            "FROM Factura f JOIN f.orden o JOIN f.estado e JOIN o.cliente c " +
+            "WHERE f.eliminado = false AND e.denominacion = :estado AND o.fecha >= :inicio AND o.fecha < :fin " +
+            "AND FUNCTION('DATE', o.fecha) BETWEEN :desde AND :hasta " +
+            "GROUP BY FUNCTION('DATE', o.fecha), c.id";
+
+    /* Columns of uk_venta_articulo_diaria in key order, to find databases created before it was reordered */
+    private static final String COLUMNAS_CLAVE_ARTICULO =
+            "SELECT column_name FROM information_schema.statistics WHERE table_schema = DATABASE() " +
+            "AND table_name = 'venta_articulo_diaria' AND index_name = 'uk_venta_articulo_diaria' ORDER BY seq_in_index";
+
+    private static final String REORDENAR_CLAVE_ARTICULO =
+            "ALTER TABLE venta_articulo_diaria DROP INDEX uk_venta_articulo_diaria, " +
+            "ADD CONSTRAINT uk_venta_articulo_diaria UNIQUE (manufacturado, dia, fk_articulo)";
+
+    /* The orden side of the join has no tipo predicate, so the old (tipo, fecha) index never served the range */
+    private static final String EXISTE_INDICE_TIPO_FECHA =
+            "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() " +
+            "AND table_name = 'comprobante' AND index_name = 'idx_comprobante_tipo_fecha'";
+
+    /*
+     * The range on o.fecha uses idx_comprobante_fecha. It is one day wider on each side than the
+     * requested days so the session time zone can not leave rows out, DATE() then keeps the exact days
+     * */
+    private static final long UN_DIA = 24L * 60 * 60 * 1000;
+
+    /* Range used when the whole history is rebuilt */
+    private static final Date PRIMER_DIA = Date.valueOf("1970-01-01");
+    private static final Date ULTIMO_DIA = Date.valueOf("9999-01-01");
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    VentaArticuloDiariaRepository ventaArticuloRepository;
+
+    @Autowired
+    OrdenesClienteDiariaRepository ordenesClienteRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    /*
+     * @desc This method adds (signo 1) or subtracts (signo -1) a billed orden to the buckets of its day
+     * */
+    public void acumular(Orden orden, int signo) {
+        if (orden.getFecha() == null) {
+            return;
+        }
+
+        final Timestamp fecha = new Timestamp(orden.getFecha().getTime());
+        final Timestamp ahora = new Timestamp(System.currentTimeMillis());
+
+        /* Ascending ids, insumos first, so concurrent upserts lock the buckets in the same order */
+        TreeMap<Long, double[]> insumos = new TreeMap<>();
+        TreeMap<Long, double[]> manufacturados = new TreeMap<>();
+
+        if (orden.getDetalles() != null) {
+            for (DetalleOrden detalle : orden.getDetalles()) {
+                if (detalle.getInsumo() != null) {
+                    this.sumar(insumos, detalle.getInsumo().getId(), detalle);
+                } else if (detalle.getArticuloManufacturado() != null) {
+                    this.sumar(manufacturados, detalle.getArticuloManufacturado().getId(), detalle);
+                }
+            }
+        }
+
+        List<Object[]> filas = new ArrayList<>();
+        for (Map.Entry<Long, double[]> venta : insumos.entrySet()) {
+            filas.add(new Object[]{fecha, false, venta.getKey(), signo * venta.getValue()[0], signo * venta.getValue()[1], ahora});
+        }
+        for (Map.Entry<Long, double[]> venta : manufacturados.entrySet()) {
+            filas.add(new Object[]{fecha, true, venta.getKey(), signo * venta.getValue()[0], signo * venta.getValue()[1], ahora});
+        }
+
+        if (!filas.isEmpty()) {
+            jdbcTemplate.batchUpdate(ACUMULAR_ARTICULO, filas);
+        }
+
+        if (orden.getCliente() != null) {
+            jdbcTemplate.update(ACUMULAR_CLIENTE, fecha, orden.getCliente().getId(), signo, ahora);
+        }
+    }
+
+    /*
+     * @desc This method recomputes the buckets of every day between desde and hasta, both included,
+     *       from the billed orders. Null bounds rebuild the whole history
+     * */
+    public void reconstruir(Date desde, Date hasta) {
+        final Date primerDia = desde != null ? desde : PRIMER_DIA;
+        final Date ultimoDia = hasta != null ? hasta : ULTIMO_DIA;
+        final Timestamp ahora = new Timestamp(System.currentTimeMillis());
+
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.execute(status -> {
+            jdbcTemplate.update("DELETE FROM venta_articulo_diaria WHERE dia BETWEEN ? AND ?", primerDia, ultimoDia);
+            jdbcTemplate.update("DELETE FROM ordenes_cliente_diaria WHERE dia BETWEEN ? AND ?", primerDia, ultimoDia);
+
+            List<Object[]> filas = new ArrayList<>();
+            for (Object[] venta : this.consultar(VENTAS_FACTURADAS, primerDia, ultimoDia)) {
+                boolean manufacturado = venta[1] == null;
+                Object articuloId = manufacturado ? venta[2] : venta[1];
+                if (articuloId != null) {
+                    filas.add(new Object[]{venta[0], manufacturado, articuloId, venta[3], venta[4], ahora});
+                }
+            }
+            if (!filas.isEmpty()) {
+                jdbcTemplate.batchUpdate(ACUMULAR_ARTICULO, filas);
+            }
+
+            filas = new ArrayList<>();
+            for (Object[] ordenes : this.consultar(ORDENES_FACTURADAS, primerDia, ultimoDia)) {
+                filas.add(new Object[]{ordenes[0], ordenes[1], ordenes[2], ahora});
+            }
+            if (!filas.isEmpty()) {
+                jdbcTemplate.batchUpdate(ACUMULAR_CLIENTE, filas);
+            }
+
+            return null;
+        });
+    }
+
+    /*
+     * @desc This method brings the indexes of databases created by older versions up to date, once on
+     *       startup: ddl-auto=update creates missing indexes but never changes or drops existing ones
+     * */
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrarIndices() {
+        List<String> columnas = jdbcTemplate.queryForList(COLUMNAS_CLAVE_ARTICULO, String.class);
+        if (!columnas.isEmpty() && !columnas.get(0).equalsIgnoreCase("manufacturado")) {
+            jdbcTemplate.execute(REORDENAR_CLAVE_ARTICULO);
+        }
+
+        Integer indices = jdbcTemplate.queryForObject(EXISTE_INDICE_TIPO_FECHA, Integer.class);
+        if (indices != null && indices > 0) {
+            jdbcTemplate.execute("ALTER TABLE comprobante DROP INDEX idx_comprobante_tipo_fecha");
+        }
+    }
+
+    /*
+     * @desc This method back-fills the rollups on the first start, when they are still empty
+     * */
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        if (ventaArticuloRepository.count() == 0 && ordenesClienteRepository.count() == 0) {
+            this.reconstruir(null, null);
+        }
+    }
+
+    private List<Object[]> consultar(String jpql, Date desde, Date hasta) {
+        return entityManager.createQuery(jpql, Object[].class)
+                .setParameter("estado", TipoEstado.PAGADO.getDenominacion())
+                .setParameter("inicio", new Timestamp(desde.getTime() - UN_DIA))
+                .setParameter("fin", new Timestamp(hasta.getTime() + 2 * UN_DIA))
+                .setParameter("desde", desde)
+                .setParameter("hasta", hasta)
+                .getResultList();
+    }
+
+    private void sumar(Map<Long, double[]> ventas, Long articuloId, DetalleOrden detalle) {
+        double[] venta = ventas.computeIfAbsent(articuloId, id -> new double[2]);
+        venta[0] += detalle.getCantidad();
+        venta[1] += detalle.getPrecioTotal();
+    }
+}
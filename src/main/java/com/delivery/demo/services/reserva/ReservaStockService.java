@@ -0,0 +1,15 @@
+package com.delivery.demo.services.reserva;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+public interface ReservaStockService {
+    public void reservar(Map<Long, Double> consumo) throws Exception;
+    public void registrar(Long ordenId, Map<Long, Double> consumo) throws Exception;
+    public boolean consumir(Long ordenId) throws Exception;
+    public boolean liberar(Long ordenId) throws Exception;
+    public Set<Long> consumir(Collection<Long> ordenIds) throws Exception;
+    public Set<Long> liberar(Collection<Long> ordenIds) throws Exception;
+    public int liberarVencidas();
+}
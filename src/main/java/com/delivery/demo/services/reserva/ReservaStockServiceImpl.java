@@ -0,0 +1,205 @@
+package com.delivery.demo.services.reserva;
+
+import com.delivery.demo.entities.articulos.ArticuloInsumo;
+import com.delivery.demo.entities.articulos.ReservaStock;
+import com.delivery.demo.entities.comprobantes.TipoEstado;
+import com.delivery.demo.exceptions.StockInsuficienteException;
+import com.delivery.demo.repositories.articulos.ArticuloInsumoRepository;
+import com.delivery.demo.repositories.articulos.ReservaStockRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+/*
+ * Stock reserved by pending orders. A reservation is taken when the order is saved, so two orders can
+ * never be promised the same units, and it is consumed (turned into a stock decrement) or released when
+ * the order leaves the "PENDIENTE" state. Reserved quantities are kept per supply in
+ * articulo_insumo.stock_reservado and per order in reserva_stock
+ * */
+@Service
+public class ReservaStockServiceImpl implements ReservaStockService {
+
+    @Autowired
+    ArticuloInsumoRepository insumoRepository;
+
+    @Autowired
+    ReservaStockRepository reservaRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${delivery.stock.reserva-ttl-ms:7200000}")
+    long ttl;
+
+    /*
+     * @desc This method reserves the given quantity of each supply
+     * @return new StockInsuficienteException() naming every supply that was short
+     *         (nothing is reserved in that case) or new Exception()
+     * */
+    @Override
+    public void reservar(Map<Long, Double> consumo) throws Exception {
+        try {
+
+            Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+            List<Long> faltantes = insumoRepository.reservarStock(consumo, timestamp);
+
+            if (!faltantes.isEmpty()) {
+                List<String> denominaciones = new ArrayList<>();
+                for (ArticuloInsumo insumo : insumoRepository.findAllById(faltantes)) {
+                    denominaciones.add(insumo.getDenominacion());
+                }
+                throw new StockInsuficienteException(faltantes, denominaciones);
+            }
+
+        } catch (StockInsuficienteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    /*
+     * @desc This method records the quantities reserved for an order
+     * */
+    @Override
+    public void registrar(Long ordenId, Map<Long, Double> consumo) throws Exception {
+        try {
+
+            Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+            List<ReservaStock> reservas = new ArrayList<>();
+
+            for (Map.Entry<Long, Double> entry : consumo.entrySet()) {
+                ReservaStock reserva = new ReservaStock(ordenId, entry.getKey(), entry.getValue());
+                reserva.setUltimaActualizacion(timestamp);
+                reservas.add(reserva);
+            }
+
+            reservaRepository.saveAll(reservas);
+
+        } catch (Exception e) {
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    /*
+     * @desc This method removes from stock the quantities reserved for an order and records them
+     *       in the supplies HistorialStock
+     * @return True if the order had a reservation, false otherwise
+     * */
+    @Override
+    public boolean consumir(Long ordenId) throws Exception {
+        return !this.consumir(Collections.singleton(ordenId)).isEmpty();
+    }
+
+    /*
+     * @desc This method gives back the quantities reserved for an order
+     * @return True if the order had a reservation, false otherwise
+     * */
+    @Override
+    public boolean liberar(Long ordenId) throws Exception {
+        return !this.liberar(Collections.singleton(ordenId)).isEmpty();
+    }
+
+    /*
+     * @desc This method removes from stock the quantities reserved for several orders, added up by
+     *       supply into one batch of decrements and one batch of HistorialStock inserts
+     * @return Set<Long> ids of the orders that had a reservation
+     * */
+    @Override
+    public Set<Long> consumir(Collection<Long> ordenIds) throws Exception {
+        try {
+
+            Set<Long> reservadas = new HashSet<>();
+            Map<Long, Double> reservado = this.getReservado(ordenIds, reservadas);
+
+            if (reservado.isEmpty()) {
+                return reservadas;
+            }
+
+            Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+            insumoRepository.consumirReserva(reservado, timestamp);
+            insumoRepository.registrarMovimientos(reservado, timestamp, false);
+            reservaRepository.deleteByOrdenes(reservadas);
+
+            return reservadas;
+
+        } catch (Exception e) {
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    /*
+     * @desc This method gives back the quantities reserved for several orders in one batch
+     * @return Set<Long> ids of the orders that had a reservation
+     * */
+    @Override
+    public Set<Long> liberar(Collection<Long> ordenIds) throws Exception {
+        try {
+
+            Set<Long> reservadas = new HashSet<>();
+            Map<Long, Double> reservado = this.getReservado(ordenIds, reservadas);
+
+            if (reservado.isEmpty()) {
+                return reservadas;
+            }
+
+            insumoRepository.liberarStock(reservado, new Timestamp(System.currentTimeMillis()));
+            reservaRepository.deleteByOrdenes(reservadas);
+
+            return reservadas;
+
+        } catch (Exception e) {
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    /*
+     * @desc This method gives back the stock reserved by the orders still "PENDIENTE" longer than the
+     *       configured time, so abandoned orders do not hold it forever. Those orders keep their state and
+     *       have their stock removed when they go "EN PROCESO", as orders without reservation do
+     * @return int orders whose reservation was released
+     * */
+    @Override
+    @Scheduled(fixedDelayString = "${delivery.stock.reserva-expiracion-ms:300000}", initialDelayString = "${delivery.stock.reserva-expiracion-ms:300000}")
+    public int liberarVencidas() {
+        Date limite = new Date(System.currentTimeMillis() - ttl);
+
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        Integer liberadas = template.execute(status -> {
+            List<Long> ordenIds = reservaRepository.getOrdenesVencidas(TipoEstado.PENDIENTE.getDenominacion(), limite);
+            if (ordenIds.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                return this.liberar(ordenIds).size();
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        });
+
+        return liberadas != null ? liberadas : 0;
+    }
+
+    /* Quantities reserved by the given orders added up by supply, reservadas gets the orders that have any */
+    private Map<Long, Double> getReservado(Collection<Long> ordenIds, Set<Long> reservadas) {
+        Map<Long, Double> reservado = new HashMap<>();
+
+        if (ordenIds.isEmpty()) {
+            return reservado;
+        }
+
+        for (ReservaStock reserva : reservaRepository.findByOrdenIdIn(ordenIds)) {
+            reservado.merge(reserva.getInsumoId(), reserva.getCantidad(), Double::sum);
+            reservadas.add(reserva.getOrdenId());
+        }
+
+        return reservado;
+    }
+}
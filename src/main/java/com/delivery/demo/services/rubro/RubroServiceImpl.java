@@ -3,11 +3,9 @@ package com.delivery.demo.services.rubro;
 import com.delivery.demo.entities.articulos.Rubro;
 import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
+import com.delivery.demo.services.search.SearchIndex;
 import com.delivery.demo.specifications.SearchSpecification;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
@@ -16,6 +14,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class RubroServiceImpl extends BaseServiceImpl<Rubro, Long> implements RubroService {
@@ -24,43 +23,25 @@ public class RubroServiceImpl extends BaseServiceImpl<Rubro, Long> implements Ru
         super(baseRepository);
     }
 
+    @Autowired
+    SearchIndex searchIndex;
+
     SearchSpecification<Rubro> spec = new SearchSpecification<Rubro>();
     Specification<Rubro> isNotDeleted = spec.isNotDeleted();
 
+    /*
+     * @desc This method builds the filter applied to the paged listings
+     * @return Specification<Rubro> matching the filter string
+     * */
     @Override
-    public Map<String, Object> findAll(String filter, int page, int size, String sortBy, String direction) throws Exception {
-        try {
-            Pageable pageable;
-            if (direction.equals("desc")) {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, sortBy));
-            } else {
-                pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.ASC, sortBy));
-            }
-
-            Page<Rubro> entityPage;
+    protected Specification<Rubro> filterSpecification(String filter) {
+        Set<Long> rubros = searchIndex.buscar(Rubro.class, filter, "denominacion");
 
-            if(filter == null || filter.equals("")){
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted),pageable);
-            } else {
-                Specification<Rubro> filterByDenominacion = spec.findByProperty("denominacion", filter);
-                Specification<Rubro> filterByRubroPadre = spec.findByForeignAttribute("rubroPadre", "denominacion", filter);
+        Specification<Rubro> filterByDenominacion = spec.findByText(rubros, filter, "denominacion");
+        Specification<Rubro> filterByRubroPadre = spec.findByForeignText("rubroPadre", rubros, filter, "denominacion");
 
-                entityPage = baseRepository.findAll(Specification.where(isNotDeleted)
-                        .and(Specification.where(filterByDenominacion)
-                                .or(filterByRubroPadre))
-                        , pageable);
-            }
-
-            List<Rubro> entities = entityPage.getContent();
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("payload", entities);
-            response.put("length", entityPage.getTotalElements());
-
-            return response;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+        return Specification.where(filterByDenominacion)
+                .or(filterByRubroPadre);
     }
 
     @Override
@@ -70,12 +51,7 @@ public class RubroServiceImpl extends BaseServiceImpl<Rubro, Long> implements Ru
             if(filter == null || filter.equals("")){
                 return baseRepository.findAll(Specification.where(isNotDeleted));
             } else {
-                Specification<Rubro> filterByDenominacion = spec.findByProperty("denominacion", filter);
-                Specification<Rubro> filterByRubroPadre = spec.findByForeignAttribute("rubroPadre", "denominacion", filter);
-
-                return baseRepository.findAll(Specification.where(isNotDeleted)
-                        .and(Specification.where(filterByDenominacion)
-                                .or(filterByRubroPadre)));
+                return baseRepository.findAll(Specification.where(isNotDeleted).and(this.filterSpecification(filter)));
             }
 
         } catch (Exception e){
@@ -95,6 +71,7 @@ public class RubroServiceImpl extends BaseServiceImpl<Rubro, Long> implements Ru
                 Timestamp timestamp = new Timestamp(System.currentTimeMillis());
                 toDelete.setUltimaActualizacion(timestamp);
                 toDelete = baseRepository.save(toDelete);
+                countCache.invalidar(domainClass);
 
                 /* Eliminar rubros hijos */
                 Specification<Rubro> filterByRubroPadre = spec.findByForeignAttribute("rubroPadre", "denominacion", toDelete.getDenominacion());
@@ -133,6 +110,7 @@ public class RubroServiceImpl extends BaseServiceImpl<Rubro, Long> implements Ru
                 toDelete.setEliminado(false);
                 toDelete.setUltimaActualizacion(timestamp);
                 toDelete = baseRepository.save(toDelete);
+                countCache.invalidar(domainClass);
 
                 /* Ocultar rubros hijos */
                 Specification<Rubro> filterByRubroPadre = spec.findByForeignAttribute("rubroPadre", "denominacion", toDelete.getDenominacion());
@@ -170,6 +148,7 @@ public class RubroServiceImpl extends BaseServiceImpl<Rubro, Long> implements Ru
                 Timestamp timestamp = new Timestamp(System.currentTimeMillis());
                 toHide.setUltimaActualizacion(timestamp);
                 toHide = baseRepository.save(toHide);
+                countCache.invalidar(domainClass);
 
                 /* Desocultar rubros hijos */
                 Specification<Rubro> filterByRubroPadre = spec.findByForeignAttribute("rubroPadre", "denominacion", toHide.getDenominacion());
@@ -209,6 +188,7 @@ public class RubroServiceImpl extends BaseServiceImpl<Rubro, Long> implements Ru
                 toHide.setOculto(false);
                 toHide.setUltimaActualizacion(timestamp);
                 toHide = baseRepository.save(toHide);
+                countCache.invalidar(domainClass);
 
                 /* Activar rubros hijos */
                 Specification<Rubro> filterByRubroPadre = spec.findByForeignAttribute("rubroPadre", "denominacion", toHide.getDenominacion());
@@ -0,0 +1,181 @@
+package com.delivery.demo.services.search;
+
+import com.delivery.demo.entities.Base;
+import com.delivery.demo.entities.articulos.ArticuloInsumo;
+import com.delivery.demo.entities.articulos.ArticuloManufacturado;
+import com.delivery.demo.entities.articulos.Categoria;
+import com.delivery.demo.entities.articulos.Rubro;
+import com.delivery.demo.entities.usuarios.Cliente;
+import com.delivery.demo.entities.usuarios.Empleado;
+import com.delivery.demo.entities.usuarios.Rol;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * @desc In-process search over the text fields the listings are filtered by. Filters are answered
+ *       as id sets that the services feed back into the JPA query, instead of LIKE '%text%'
+ *       predicates that can not use any index. The index is loaded on startup and kept up to date by
+ *       SearchIndexListener once each write commits
+ * */
+@Component
+public class SearchIndex {
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Value("${delivery.search.max-ids:1000}")
+    int maxIds;
+
+    private final Map<Class<?>, TrigramIndex> indices = new LinkedHashMap<>();
+    private final Set<Class<?>> cargados = ConcurrentHashMap.newKeySet();
+
+    public SearchIndex() {
+        indices.put(ArticuloInsumo.class, new TrigramIndex(new String[]{"denominacion", "descripcion"}));
+        indices.put(ArticuloManufacturado.class, new TrigramIndex(new String[]{"denominacion", "descripcion"}));
+        indices.put(Rubro.class, new TrigramIndex(new String[]{"denominacion"}));
+        indices.put(Categoria.class, new TrigramIndex(new String[]{"denominacion"}));
+        indices.put(Rol.class, new TrigramIndex(new String[]{"denominacion"}));
+        indices.put(Cliente.class, new TrigramIndex(new String[]{"nombre", "apellido", "uid"}));
+        indices.put(Empleado.class, new TrigramIndex(new String[]{"nombre", "apellido", "uid", "cuil"}));
+    }
+
+    /*
+     * @desc This method finds the entities where any of the given fields contains the text
+     * @return Set<Long> ids of the matching entities, deleted ones included, or null if the text is too
+     *         short or too broad for an id list (more than delivery.search.max-ids matches), in which case
+     *         the caller filters with SQL
+     * */
+    public Set<Long> buscar(Class<?> entidad, String texto, String... campos) {
+        TrigramIndex indice = this.getIndice(entidad);
+        this.cargar(entidad, indice);
+
+        return indice.buscar(texto, this.posiciones(indice, campos), maxIds);
+    }
+
+    /*
+     * @desc This method checks whether any of the given fields of one entity contains the text
+     * */
+    public boolean coincide(Class<?> entidad, Long id, String texto, String... campos) {
+        TrigramIndex indice = this.getIndice(entidad);
+        this.cargar(entidad, indice);
+
+        return indice.coincide(id, texto, this.posiciones(indice, campos));
+    }
+
+    /*
+     * @desc This method normalizes a text the way the index compares it: without accents and lowercase
+     * */
+    public static String normalizar(String texto) {
+        return TrigramIndex.normalizar(texto);
+    }
+
+    private int[] posiciones(TrigramIndex indice, String[] campos) {
+        int[] posiciones = new int[campos.length];
+        for (int i = 0; i < campos.length; i++) {
+            posiciones[i] = indice.posicion(campos[i]);
+        }
+        return posiciones;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarTodo() {
+        for (Map.Entry<Class<?>, TrigramIndex> entry : indices.entrySet()) {
+            this.cargar(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /*
+     * @desc This method indexes the current values of an entity once the transaction commits
+     * */
+    public void indexar(Base entidad) {
+        TrigramIndex indice = indices.get(entidad.getClass());
+        if (indice == null || entidad.getId() == null) {
+            return;
+        }
+
+        BeanWrapperImpl wrapper = new BeanWrapperImpl(entidad);
+        String[] campos = indice.getCampos();
+        String[] valores = new String[campos.length];
+        for (int i = 0; i < campos.length; i++) {
+            Object valor = wrapper.getPropertyValue(campos[i]);
+            valores[i] = valor == null ? null : valor.toString();
+        }
+
+        Long id = entidad.getId();
+        this.alConfirmar(() -> indice.put(id, valores));
+    }
+
+    /*
+     * @desc This method removes an entity from the index once the transaction commits
+     * */
+    public void eliminar(Base entidad) {
+        TrigramIndex indice = indices.get(entidad.getClass());
+        if (indice == null || entidad.getId() == null) {
+            return;
+        }
+
+        Long id = entidad.getId();
+        this.alConfirmar(() -> indice.remove(id));
+    }
+
+    private TrigramIndex getIndice(Class<?> entidad) {
+        TrigramIndex indice = indices.get(entidad);
+        if (indice == null) {
+            throw new IllegalArgumentException("Entidad no indexada: " + entidad.getSimpleName());
+        }
+        return indice;
+    }
+
+    private void cargar(Class<?> entidad, TrigramIndex indice) {
+        if (cargados.contains(entidad)) {
+            return;
+        }
+
+        /* Writes wait for the load, so a commit that happens meanwhile is applied after the rows read */
+        synchronized (indice) {
+            if (cargados.contains(entidad)) {
+                return;
+            }
+
+            String[] campos = indice.getCampos();
+            StringBuilder jpql = new StringBuilder("SELECT e.id");
+            for (String campo : campos) {
+                jpql.append(", e.").append(campo);
+            }
+            jpql.append(" FROM ").append(entidad.getSimpleName()).append(" e");
+
+            for (Object[] fila : entityManager.createQuery(jpql.toString(), Object[].class).getResultList()) {
+                String[] documento = new String[campos.length];
+                for (int i = 0; i < campos.length; i++) {
+                    documento[i] = fila[i + 1] == null ? null : fila[i + 1].toString();
+                }
+                indice.put((Long) fila[0], documento);
+            }
+
+            cargados.add(entidad);
+        }
+    }
+
+    private void alConfirmar(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
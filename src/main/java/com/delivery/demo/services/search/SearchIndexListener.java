@@ -0,0 +1,31 @@
+package com.delivery.demo.services.search;
+
+import com.delivery.demo.entities.Base;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/*
+ * @desc JPA listener of the searchable entities, keeps SearchIndex in sync with every insert,
+ *       update and delete made through JPA
+ * */
+@Component
+public class SearchIndexListener {
+
+    @Autowired
+    SearchIndex searchIndex;
+
+    @PostPersist
+    @PostUpdate
+    public void indexar(Base entidad) {
+        searchIndex.indexar(entidad);
+    }
+
+    @PostRemove
+    public void eliminar(Base entidad) {
+        searchIndex.eliminar(entidad);
+    }
+}
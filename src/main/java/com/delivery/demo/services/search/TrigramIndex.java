@@ -0,0 +1,160 @@
+package com.delivery.demo.services.search;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * @desc Inverted trigram index over the searchable fields of one entity. Every field value is
+ *       normalized (lower case, no accents, like the database collation compares) and split into
+ *       three letter grams; a substring search intersects the ids of the grams of the searched text
+ *       and then checks the candidates, which gives the same matches as LIKE '%text%'
+ * */
+class TrigramIndex {
+
+    private final String[] campos;
+    private final Map<Long, String[]> documentos = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> trigramas = new ConcurrentHashMap<>();
+
+    TrigramIndex(String[] campos) {
+        this.campos = campos;
+    }
+
+    String[] getCampos() {
+        return campos;
+    }
+
+    int posicion(String campo) {
+        for (int i = 0; i < campos.length; i++) {
+            if (campos[i].equals(campo)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Campo no indexado: " + campo);
+    }
+
+    synchronized void put(Long id, String[] valores) {
+        this.escribir(id, valores);
+    }
+
+    synchronized void remove(Long id) {
+        this.borrar(id);
+    }
+
+    /*
+     * @desc This method finds the documents where any of the given fields contains the text
+     * @return Set<Long> ids of the matching documents, or null if the text is shorter than a trigram
+     *         or matches more than limite documents
+     * */
+    Set<Long> buscar(String texto, int[] posiciones, int limite) {
+        String buscado = normalizar(texto);
+        if (buscado.length() < 3) {
+            return null;
+        }
+
+        Set<Long> resultado = new HashSet<>();
+
+        for (Long id : this.candidatos(buscado)) {
+            if (this.contiene(documentos.get(id), buscado, posiciones)) {
+                resultado.add(id);
+                if (resultado.size() > limite) {
+                    return null;
+                }
+            }
+        }
+
+        return resultado;
+    }
+
+    /*
+     * @desc This method checks whether any of the given fields of one document contains the text
+     * */
+    boolean coincide(Long id, String texto, int[] posiciones) {
+        return id != null && this.contiene(documentos.get(id), normalizar(texto), posiciones);
+    }
+
+    private boolean contiene(String[] documento, String buscado, int[] posiciones) {
+        if (documento == null) {
+            return false;
+        }
+        for (int posicion : posiciones) {
+            if (documento[posicion] != null && documento[posicion].contains(buscado)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String normalizar(String valor) {
+        String sinAcentos = Normalizer.normalize(valor, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sinAcentos.toLowerCase(Locale.ROOT);
+    }
+
+    private Collection<Long> candidatos(String buscado) {
+        List<Set<Long>> listas = new ArrayList<>();
+
+        for (String trigrama : trigramas(buscado)) {
+            Set<Long> ids = trigramas.get(trigrama);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            listas.add(ids);
+        }
+
+        listas.sort(Comparator.comparingInt(Set::size));
+
+        Set<Long> interseccion = new HashSet<>(listas.get(0));
+        for (int i = 1; i < listas.size() && !interseccion.isEmpty(); i++) {
+            interseccion.retainAll(listas.get(i));
+        }
+
+        return interseccion;
+    }
+
+    private void escribir(Long id, String[] valores) {
+        this.borrar(id);
+
+        String[] documento = new String[valores.length];
+        for (int i = 0; i < valores.length; i++) {
+            if (valores[i] == null) {
+                continue;
+            }
+            documento[i] = normalizar(valores[i]);
+            for (String trigrama : trigramas(documento[i])) {
+                trigramas.computeIfAbsent(trigrama, clave -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+
+        documentos.put(id, documento);
+    }
+
+    private void borrar(Long id) {
+        String[] anterior = documentos.remove(id);
+        if (anterior == null) {
+            return;
+        }
+
+        for (String valor : anterior) {
+            if (valor == null) {
+                continue;
+            }
+            for (String trigrama : trigramas(valor)) {
+                Set<Long> ids = trigramas.get(trigrama);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        trigramas.remove(trigrama);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Set<String> trigramas(String valor) {
+        Set<String> resultado = new HashSet<>();
+        for (int i = 0; i + 3 <= valor.length(); i++) {
+            resultado.add(valor.substring(i, i + 3));
+        }
+        return resultado;
+    }
+}
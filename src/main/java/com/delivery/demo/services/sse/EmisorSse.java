@@ -0,0 +1,138 @@
+package com.delivery.demo.services.sse;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * @desc Delivery of server-sent events shared by the notifiers. Every event is serialized once and
+ *       queued to each subscriber in a bounded buffer that a small pool of threads writes out, so a slow
+ *       connection only delays itself. A subscriber whose buffer fills up or whose connection fails is
+ *       closed, and the EventSource reconnects and starts over from the current state
+ * */
+public class EmisorSse {
+
+    private final ExecutorService envio;
+    private final long timeout;
+    private final int capacidad;
+
+    public EmisorSse(String nombre, int hilos, long timeout, int capacidad) {
+        this.envio = Executors.newFixedThreadPool(hilos, runnable -> {
+            Thread thread = new Thread(runnable, nombre);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeout = timeout;
+        this.capacidad = capacidad;
+    }
+
+    /*
+     * @desc This method wires the removal of a subscriber to its emitter and then adds it. It is added
+     *       before the first event is queued, so a change committed meanwhile is not missed
+     * */
+    public void registrar(Suscriptor suscriptor, Runnable agregar, Runnable quitar) {
+        suscriptor.emitter.onCompletion(quitar);
+        suscriptor.emitter.onTimeout(quitar);
+        suscriptor.emitter.onError(error -> quitar.run());
+        suscriptor.quitar = quitar;
+
+        agregar.run();
+    }
+
+    /*
+     * @desc This method queues an event to a subscriber, closing it if its buffer is full
+     * */
+    public void encolar(Suscriptor suscriptor, Evento evento) {
+        if (!suscriptor.cola.offer(evento)) {
+            suscriptor.quitar.run();
+            suscriptor.emitter.complete();
+            return;
+        }
+
+        if (suscriptor.enviando.compareAndSet(false, true)) {
+            try {
+                envio.execute(() -> this.vaciar(suscriptor));
+            } catch (RejectedExecutionException e) {
+                suscriptor.enviando.set(false);
+            }
+        }
+    }
+
+    /*
+     * @desc This method stops the delivery threads and closes the given subscribers
+     * */
+    public void cerrar(Iterable<? extends Suscriptor> suscriptores) {
+        envio.shutdownNow();
+
+        for (Suscriptor suscriptor : suscriptores) {
+            suscriptor.emitter.complete();
+        }
+    }
+
+    private void vaciar(Suscriptor suscriptor) {
+        while (true) {
+            Evento evento = suscriptor.cola.poll();
+
+            if (evento == null) {
+                suscriptor.enviando.set(false);
+                /* An event queued after the poll and before the flag was released */
+                if (suscriptor.cola.isEmpty() || !suscriptor.enviando.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                suscriptor.emitter.send(evento.construir());
+            } catch (Exception e) {
+                suscriptor.quitar.run();
+                suscriptor.cola.clear();
+                suscriptor.emitter.completeWithError(e);
+            }
+        }
+    }
+
+    /* Stream of one client, notifiers extend it with what the client follows */
+    public static class Suscriptor {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Evento> cola;
+        private final AtomicBoolean enviando = new AtomicBoolean();
+        private Runnable quitar;
+
+        public Suscriptor(EmisorSse emisor) {
+            this.emitter = new SseEmitter(emisor.timeout);
+            this.cola = new ArrayBlockingQueue<>(emisor.capacidad);
+        }
+
+        public SseEmitter getEmitter() {
+            return emitter;
+        }
+    }
+
+    /* Event serialized once and shared by every subscriber, a null name is a heartbeat comment */
+    public static class Evento {
+        public static final Evento LATIDO = new Evento(null, null);
+
+        private final String nombre;
+        private final String json;
+
+        public Evento(String nombre, String json) {
+            this.nombre = nombre;
+            this.json = json;
+        }
+
+        /* SseEventBuilder is mutated when sent, so each send gets its own */
+        SseEmitter.SseEventBuilder construir() {
+            if (nombre == null) {
+                return SseEmitter.event().comment("latido");
+            }
+            return SseEmitter.event().name(nombre).data(json, MediaType.APPLICATION_JSON);
+        }
+    }
+}
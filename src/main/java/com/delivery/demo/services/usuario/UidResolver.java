@@ -0,0 +1,123 @@
+package com.delivery.demo.services.usuario;
+
+import com.delivery.demo.repositories.usuarios.UsuarioRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * @desc Resolves the Firebase uid of every authenticated request to the usuario id and role.
+ *       A bounded LRU cache fronts an equality query on the unique uid index, so the usual lookup
+ *       costs a hash access. Unknown uids are not cached
+ * */
+@Component
+public class UidResolver {
+
+    @Autowired
+    UsuarioRepository usuarioRepository;
+
+    @Value("${delivery.uid.cache-size:10000}")
+    int capacidad;
+
+    private Map<String, Identidad> identidades;
+
+    @PostConstruct
+    public void init() {
+        identidades = new LinkedHashMap<String, Identidad>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Identidad> eldest) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    /*
+     * @desc This method gets the id and role of the usuario with the given uid
+     * @return Identidad identidad or null if no usuario has that uid
+     * */
+    public Identidad resolver(String uid) {
+        if (uid == null) {
+            return null;
+        }
+
+        synchronized (identidades) {
+            Identidad identidad = identidades.get(uid);
+            if (identidad != null) {
+                return identidad;
+            }
+        }
+
+        List<Object[]> filas = usuarioRepository.resolverUid(uid);
+        if (filas.isEmpty()) {
+            return null;
+        }
+
+        Identidad identidad = new Identidad((Long) filas.get(0)[0], (String) filas.get(0)[1]);
+        synchronized (identidades) {
+            identidades.put(uid, identidad);
+        }
+
+        return identidad;
+    }
+
+    /*
+     * @desc This method gets the id of the usuario with the given uid
+     * @return Long id or new Exception() if no usuario has that uid
+     * */
+    public Long getId(String uid) throws Exception {
+        Identidad identidad = this.resolver(uid);
+        if (identidad == null) {
+            throw new Exception("No existe el usuario " + uid);
+        }
+        return identidad.getId();
+    }
+
+    /*
+     * @desc This method discards the cached uids of a usuario, now and once the current transaction
+     *       completes, so its uid or role can change
+     * */
+    public void invalidar(Long usuarioId) {
+        if (usuarioId == null) {
+            return;
+        }
+
+        this.descartar(usuarioId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    descartar(usuarioId);
+                }
+            });
+        }
+    }
+
+    private void descartar(Long usuarioId) {
+        synchronized (identidades) {
+            Iterator<Identidad> iterator = identidades.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getId().equals(usuarioId)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Identidad {
+        private Long id;
+        private String rol;
+    }
+}
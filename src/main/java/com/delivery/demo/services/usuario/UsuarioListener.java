@@ -0,0 +1,24 @@
+package com.delivery.demo.services.usuario;
+
+import com.delivery.demo.entities.usuarios.Usuario;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/*
+ * @desc JPA listener of usuarios, discards the cached uid of a usuario whenever it is updated or deleted
+ * */
+@Component
+public class UsuarioListener {
+
+    @Autowired
+    UidResolver uidResolver;
+
+    @PostUpdate
+    @PostRemove
+    public void invalidar(Usuario usuario) {
+        uidResolver.invalidar(usuario.getId());
+    }
+}
@@ -3,8 +3,7 @@ package com.delivery.demo.services.usuario;
 import com.delivery.demo.entities.usuarios.Usuario;
 import com.delivery.demo.repositories.BaseRepository;
 import com.delivery.demo.services.base.BaseServiceImpl;
-import com.delivery.demo.specifications.SearchSpecification;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -16,7 +15,8 @@ public class UsuarioServiceImpl extends BaseServiceImpl<Usuario, Long> implement
         super(baseRepository);
     }
 
-    SearchSpecification<Usuario> spec = new SearchSpecification<Usuario>();
+    @Autowired
+    UidResolver uidResolver;
 
     /*
      * @desc This method gets one user by its uid
@@ -26,8 +26,7 @@ public class UsuarioServiceImpl extends BaseServiceImpl<Usuario, Long> implement
     public Usuario findByUID(String uid) throws Exception {
         try {
 
-            Specification<Usuario> filterByUID = spec.findByUid(uid);
-            Optional<Usuario> entityOptional = baseRepository.findOne(Specification.where(filterByUID));
+            Optional<Usuario> entityOptional = baseRepository.findById(uidResolver.getId(uid));
 
             return entityOptional.get();
 
@@ -2,11 +2,9 @@ package com.delivery.demo.specifications;
 
 import org.springframework.data.jpa.domain.Specification;
 
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
+import javax.persistence.criteria.*;
 import java.sql.Date;
+import java.util.Collection;
 
 public class SearchSpecification <E> {
     public Specification<E> findByProperty(String propertyName, String propertyValue) {
@@ -22,7 +20,7 @@ public class SearchSpecification <E> {
         return new Specification<E>() {
             public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query,
                                          CriteriaBuilder builder) {
-                return builder.like(root.get("uid").as(String.class), uidValue);
+                return builder.equal(root.get("uid"), uidValue);
             }
         };
     }
@@ -81,11 +79,98 @@ public class SearchSpecification <E> {
         };
     }
 
-    public Specification<E> findByEstado(String propertyValue) {
+    /*
+     * @desc Elements whose id is in the given set, as answered by SearchIndex
+     * */
+    public Specification<E> findByIds(Collection<Long> ids) {
         return new Specification<E>() {
             public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query,
                                          CriteriaBuilder builder) {
-                return builder.like(root.join("estado").get("denominacion"), "%" + propertyValue + "%");
+                if (ids.isEmpty()) {
+                    return builder.disjunction();
+                }
+                return root.get("id").in(ids);
+            }
+        };
+    }
+
+    /*
+     * @desc Elements whose related entity, reached by a dotted path of relations, has its id in the
+     * given set. Relations are left joined so the condition can be OR-ed with others
+     * */
+    public Specification<E> findByForeignIds(String relationPath, Collection<Long> ids) {
+        return new Specification<E>() {
+            public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query,
+                                         CriteriaBuilder builder) {
+                if (ids.isEmpty()) {
+                    return builder.disjunction();
+                }
+
+                From<?, ?> from = root;
+                for (String relation : relationPath.split("\\.")) {
+                    from = from.join(relation, JoinType.LEFT);
+                }
+                return from.get("id").in(ids);
+            }
+        };
+    }
+
+    /*
+     * @desc Elements where any of the given properties contains the value: by id when SearchIndex answered
+     * with an id set, with LIKE when it returned null because the text was too short or too broad
+     * */
+    public Specification<E> findByText(Collection<Long> ids, String value, String... propertyNames) {
+        if (ids != null) {
+            return this.findByIds(ids);
+        }
+        return new Specification<E>() {
+            public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query,
+                                         CriteriaBuilder builder) {
+                return like(builder, root, value, propertyNames);
+            }
+        };
+    }
+
+    /*
+     * @desc Same as findByText over the entity reached by a dotted path of left joined relations
+     * */
+    public Specification<E> findByForeignText(String relationPath, Collection<Long> ids, String value, String... propertyNames) {
+        if (ids != null) {
+            return this.findByForeignIds(relationPath, ids);
+        }
+        return new Specification<E>() {
+            public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query,
+                                         CriteriaBuilder builder) {
+                From<?, ?> from = root;
+                for (String relation : relationPath.split("\\.")) {
+                    from = from.join(relation, JoinType.LEFT);
+                }
+                return like(builder, from, value, propertyNames);
+            }
+        };
+    }
+
+    /*
+     * @desc Element with the given id when the value is a number, none otherwise
+     * */
+    public Specification<E> findById(String value) {
+        return new Specification<E>() {
+            public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query,
+                                         CriteriaBuilder builder) {
+                String id = value.trim();
+                if (!id.matches("\\d{1,18}")) {
+                    return builder.disjunction();
+                }
+                return builder.equal(root.get("id"), Long.valueOf(id));
+            }
+        };
+    }
+
+    public Specification<E> findByPropertyEquals(String propertyName, String propertyValue) {
+        return new Specification<E>() {
+            public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query,
+                                         CriteriaBuilder builder) {
+                return builder.equal(root.get(propertyName), propertyValue.trim());
             }
         };
     }
@@ -98,13 +183,84 @@ public class SearchSpecification <E> {
         };
     }
 
-    public Specification<E> findByOutOfStock(){
+    /*
+     * @desc Keyset (seek) condition: elements placed after the given sort value and id when sorting
+     * by propertyName and then by id in the same direction. MySQL places nulls first ascending
+     * and last descending
+     * */
+    public <Y extends Comparable<? super Y>> Specification<E> after(String propertyName, boolean desc, String value, Long id) {
         return new Specification<E>() {
-            @Override
-            public Predicate toPredicate(Root<E> root, CriteriaQuery<?> criteriaQuery, CriteriaBuilder builder) {
-                return builder.greaterThan(root.get("stockMinimo"), root.get("stockActual"));
+            public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query,
+                                         CriteriaBuilder builder) {
+                Path<Long> idPath = root.get("id");
+                Predicate tieBreak = desc ? builder.lessThan(idPath, id) : builder.greaterThan(idPath, id);
+
+                if (propertyName.equals("id")) {
+                    return tieBreak;
+                }
+
+                Path<Y> path = getPath(root, propertyName);
+
+                if (value == null) {
+                    Predicate sameNull = builder.and(builder.isNull(path), tieBreak);
+                    return desc ? sameNull : builder.or(sameNull, builder.isNotNull(path));
+                }
+
+                Y typed = toComparable(value, path.getJavaType());
+                Predicate beyond = desc ? builder.lessThan(path, typed) : builder.greaterThan(path, typed);
+                Predicate next = builder.or(beyond, builder.and(builder.equal(path, typed), tieBreak));
+
+                return desc ? builder.or(next, builder.isNull(path)) : next;
             }
         };
     }
 
+    private static Predicate like(CriteriaBuilder builder, From<?, ?> from, String value, String[] propertyNames) {
+        Predicate[] predicates = new Predicate[propertyNames.length];
+        for (int i = 0; i < propertyNames.length; i++) {
+            predicates[i] = builder.like(from.get(propertyNames[i]).as(String.class), "%" + value + "%");
+        }
+        return builder.or(predicates);
+    }
+
+    /*
+     * @desc Whether the cursor of a seek listing can carry values of this type: the ones toComparable
+     * reads back from their Cursor text
+     * */
+    public static boolean isSeekable(Class<?> type) {
+        return java.util.Date.class.isAssignableFrom(type) || type == String.class
+                || type == Long.class || type == long.class
+                || type == Integer.class || type == int.class
+                || type == Double.class || type == double.class
+                || type == Float.class || type == float.class
+                || type == Boolean.class || type == boolean.class;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Y extends Comparable<? super Y>> Path<Y> getPath(Root<?> root, String propertyName) {
+        Path<?> path = root;
+        for (String part : propertyName.split("\\.")) {
+            path = path.get(part);
+        }
+        return (Path<Y>) path;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Y extends Comparable<? super Y>> Y toComparable(String value, Class<?> type) {
+        if (java.util.Date.class.isAssignableFrom(type)) {
+            return (Y) new java.util.Date(Long.parseLong(value));
+        } else if (type == Long.class || type == long.class) {
+            return (Y) Long.valueOf(value);
+        } else if (type == Integer.class || type == int.class) {
+            return (Y) Integer.valueOf(value);
+        } else if (type == Double.class || type == double.class) {
+            return (Y) Double.valueOf(value);
+        } else if (type == Float.class || type == float.class) {
+            return (Y) Float.valueOf(value);
+        } else if (type == Boolean.class || type == boolean.class) {
+            return (Y) Boolean.valueOf(value);
+        }
+        return (Y) value;
+    }
+
 }
@@ -0,0 +1,101 @@
+package com.delivery.demo.services.base;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountCacheTest {
+
+    private CountCache cache;
+    private AtomicLong consultas;
+    private AtomicLong total;
+    private Supplier<Long> contar;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CountCache();
+        cache.ttl = 60000;
+
+        consultas = new AtomicLong();
+        total = new AtomicLong(10);
+        contar = () -> {
+            consultas.incrementAndGet();
+            return total.get();
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.cerrar();
+    }
+
+    @Test
+    void reutilizaElConteoVigente() {
+        assertEquals(10, cache.get(String.class, "pizza", false, contar));
+        total.set(11);
+
+        assertEquals(10, cache.get(String.class, "pizza", false, contar));
+        assertEquals(1, consultas.get());
+    }
+
+    @Test
+    void normalizaElFiltro() {
+        cache.get(String.class, "Pízza ", false, contar);
+        cache.get(String.class, " pizza", false, contar);
+        cache.get(String.class, "PIZZA", false, contar);
+
+        assertEquals(1, consultas.get());
+    }
+
+    @Test
+    void separaEntidadesYFiltros() {
+        cache.get(String.class, "pizza", false, contar);
+        cache.get(String.class, "empanada", false, contar);
+        cache.get(Integer.class, "pizza", false, contar);
+        cache.get(String.class, null, false, contar);
+
+        assertEquals(4, consultas.get());
+    }
+
+    @Test
+    void invalidarRecalculaSoloEsaEntidad() {
+        cache.get(String.class, "pizza", false, contar);
+        cache.get(Integer.class, "pizza", false, contar);
+        total.set(11);
+
+        cache.invalidar(String.class);
+
+        assertEquals(11, cache.get(String.class, "pizza", false, contar));
+        assertEquals(10, cache.get(Integer.class, "pizza", false, contar));
+        assertEquals(3, consultas.get());
+    }
+
+    @Test
+    void estimadoDevuelveElConteoViejoMientrasRecalcula() throws Exception {
+        cache.get(String.class, "pizza", false, contar);
+        total.set(11);
+        cache.invalidar(String.class);
+
+        assertEquals(10, cache.get(String.class, "pizza", true, contar));
+
+        for (int i = 0; i < 100 && consultas.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, consultas.get());
+    }
+
+    @Test
+    void venceConElTtl() {
+        cache.ttl = 0;
+
+        cache.get(String.class, "pizza", false, contar);
+        cache.get(String.class, "pizza", false, contar);
+
+        assertEquals(2, consultas.get());
+    }
+}
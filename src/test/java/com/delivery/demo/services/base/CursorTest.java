@@ -0,0 +1,59 @@
+package com.delivery.demo.services.base;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CursorTest {
+
+    @Test
+    void soloId() throws Exception {
+        Cursor cursor = Cursor.decode(Cursor.encode(42L, null));
+
+        assertEquals(42L, cursor.getId());
+        assertNull(cursor.getValue());
+    }
+
+    @Test
+    void fechaComoMilisegundos() throws Exception {
+        Date fecha = new Date(1600000000123L);
+
+        Cursor cursor = Cursor.decode(Cursor.encode(7L, fecha));
+
+        assertEquals(7L, cursor.getId());
+        assertEquals("1600000000123", cursor.getValue());
+    }
+
+    @Test
+    void textoConSeparadoresYAcentos() throws Exception {
+        Cursor cursor = Cursor.decode(Cursor.encode(3L, "Pizza | jamón"));
+
+        assertEquals(3L, cursor.getId());
+        assertEquals("Pizza | jamón", cursor.getValue());
+    }
+
+    @Test
+    void numeros() throws Exception {
+        assertEquals("12.5", Cursor.decode(Cursor.encode(1L, 12.5)).getValue());
+        assertEquals("false", Cursor.decode(Cursor.encode(1L, false)).getValue());
+    }
+
+    @Test
+    void esSeguroEnUrl() {
+        String cursor = Cursor.encode(Long.MAX_VALUE, "??>>~~");
+
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void rechazaCursoresInvalidos() {
+        Exception base64 = assertThrows(Exception.class, () -> Cursor.decode("no es base64!"));
+        /* "eA" is "x", not an id */
+        Exception id = assertThrows(Exception.class, () -> Cursor.decode("eA"));
+
+        assertEquals("Cursor inválido", base64.getMessage());
+        assertEquals("Cursor inválido", id.getMessage());
+    }
+}
@@ -0,0 +1,144 @@
+package com.delivery.demo.services.insumo;
+
+import com.delivery.demo.dtos.IngresoStockDTO;
+import com.delivery.demo.repositories.articulos.ArticuloInsumoRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/*
+ * Stock intake parsing of ArticuloInsumoServiceImpl.ingresarStock, with the repository mocked
+ * */
+class IngresoStockTest {
+
+    private ArticuloInsumoRepository insumoRepository;
+    private ArticuloInsumoServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        insumoRepository = mock(ArticuloInsumoRepository.class);
+        when(insumoRepository.agregarStock(anyMap(), any(Date.class))).thenReturn(Collections.emptyList());
+
+        service = new ArticuloInsumoServiceImpl(insumoRepository);
+        service.insumoRepository = insumoRepository;
+        service.objectMapper = new ObjectMapper();
+    }
+
+    @Test
+    void csvSumaLasLineasDelMismoInsumo() throws Exception {
+        IngresoStockDTO ingreso = this.ingresar("1,2.5\n2;4\n\n1,0.5\n", "text/csv");
+
+        assertEquals(3, ingreso.getLineas());
+        assertEquals(2, ingreso.getInsumos());
+        assertEquals(7, ingreso.getCantidad(), 1e-9);
+        assertEquals(cantidades(1L, 3.0, 2L, 4.0), this.aplicadas());
+    }
+
+    @Test
+    void csvSaltaElBomYLaCabecera() throws Exception {
+        IngresoStockDTO ingreso = this.ingresar("﻿InsumoId,Cantidad\r\n5,10\r\n", "text/csv");
+
+        assertEquals(1, ingreso.getLineas());
+        assertEquals(cantidades(5L, 10.0), this.aplicadas());
+    }
+
+    @Test
+    void csvNoSaltaUnaPrimeraLineaQueNoEsCabecera() throws Exception {
+        IngresoStockDTO ingreso = this.ingresar("7,1\n8,2\n", "text/csv");
+
+        assertEquals(2, ingreso.getLineas());
+        assertEquals(cantidades(7L, 1.0, 8L, 2.0), this.aplicadas());
+    }
+
+    @Test
+    void csvRechazaValoresNoNumericos() {
+        Exception error = assertThrows(Exception.class, () -> this.ingresar("1,2\n2,abc\n", "text/csv"));
+
+        assertEquals("Linea 2: valor no numerico", error.getMessage());
+        verify(insumoRepository, never()).agregarStock(anyMap(), any(Date.class));
+    }
+
+    @Test
+    void csvRechazaCantidadesNoPositivas() {
+        Exception error = assertThrows(Exception.class, () -> this.ingresar("1,0\n", "text/csv"));
+
+        assertEquals("Linea 1: la cantidad debe ser mayor a 0", error.getMessage());
+    }
+
+    @Test
+    void jsonLeeElArregloDeLineas() throws Exception {
+        IngresoStockDTO ingreso = this.ingresar(
+                "[{\"insumoId\": 3, \"cantidad\": 1.5, \"nota\": {\"x\": 1}}, {\"cantidad\": 2, \"insumoId\": 3}]",
+                "application/json");
+
+        assertEquals(2, ingreso.getLineas());
+        assertEquals(cantidades(3L, 3.5), this.aplicadas());
+    }
+
+    @Test
+    void jsonRechazaValoresNoNumericos() {
+        Exception insumo = assertThrows(Exception.class,
+                () -> this.ingresar("[{\"insumoId\": \"3\", \"cantidad\": 1}]", "application/json"));
+        Exception cantidad = assertThrows(Exception.class,
+                () -> this.ingresar("[{\"insumoId\": 3, \"cantidad\": \"mucho\"}]", "application/json"));
+
+        assertEquals("Linea 1: insumoId debe ser un numero entero", insumo.getMessage());
+        assertEquals("Linea 1: cantidad debe ser un numero", cantidad.getMessage());
+    }
+
+    @Test
+    void jsonRechazaLineasIncompletas() {
+        Exception error = assertThrows(Exception.class,
+                () -> this.ingresar("[{\"insumoId\": 3}]", "application/json"));
+
+        assertEquals("Linea 1: se esperaba insumoId y cantidad", error.getMessage());
+    }
+
+    @Test
+    void rechazaInsumosInexistentes() {
+        when(insumoRepository.agregarStock(anyMap(), any(Date.class))).thenReturn(Collections.singletonList(9L));
+
+        Exception error = assertThrows(Exception.class, () -> this.ingresar("9,1\n", "text/csv"));
+
+        assertEquals("No existen los insumos [9]", error.getMessage());
+        verify(insumoRepository, never()).registrarMovimientos(anyMap(), any(Date.class), anyBoolean());
+    }
+
+    @Test
+    void rechazaUnIngresoVacio() {
+        Exception error = assertThrows(Exception.class, () -> this.ingresar("insumoId,cantidad\n", "text/csv"));
+
+        assertEquals("No hay lineas para ingresar", error.getMessage());
+    }
+
+    private IngresoStockDTO ingresar(String contenido, String contentType) throws Exception {
+        return service.ingresarStock(new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8)), contentType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Double> aplicadas() {
+        ArgumentCaptor<Map<Long, Double>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(insumoRepository).agregarStock(captor.capture(), any(Date.class));
+        return captor.getValue();
+    }
+
+    private static Map<Long, Double> cantidades(Object... pares) {
+        Map<Long, Double> cantidades = new HashMap<>();
+        for (int i = 0; i < pares.length; i += 2) {
+            cantidades.put((Long) pares[i], (Double) pares[i + 1]);
+        }
+        return cantidades;
+    }
+}
@@ -0,0 +1,114 @@
+package com.delivery.demo.services.reportes;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportCacheTest {
+
+    /* A closed range, kept until a factura inside it changes */
+    private static final Date INICIO = fecha(2020, Calendar.MARCH, 1);
+    private static final Date FIN = fecha(2020, Calendar.MARCH, 31);
+
+    private ReportCache cache;
+    private AtomicInteger consultas;
+    private Callable<Integer> reporte;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ReportCache();
+        cache.ttl = 60000;
+
+        consultas = new AtomicInteger();
+        reporte = consultas::incrementAndGet;
+    }
+
+    @Test
+    void reutilizaElResultado() throws Exception {
+        assertEquals(1, (int) cache.get("top", INICIO, FIN, 5, reporte));
+        assertEquals(1, (int) cache.get("top", INICIO, FIN, 5, reporte));
+
+        assertEquals(1L, cache.getEstadisticas().get("aciertos"));
+        assertEquals(1L, cache.getEstadisticas().get("fallos"));
+    }
+
+    @Test
+    void separaReportesYParametros() throws Exception {
+        cache.get("top", INICIO, FIN, 5, reporte);
+        cache.get("top", INICIO, FIN, 10, reporte);
+        cache.get("ingresos", INICIO, FIN, null, reporte);
+
+        assertEquals(3, consultas.get());
+    }
+
+    @Test
+    void invalidarDescartaLosRangosQueIncluyenLaFecha() throws Exception {
+        cache.get("top", INICIO, FIN, 5, reporte);
+        cache.get("top", fecha(2020, Calendar.APRIL, 1), fecha(2020, Calendar.APRIL, 30), 5, reporte);
+
+        /* Any time of the last day is inside the range */
+        Calendar ultimoDia = Calendar.getInstance();
+        ultimoDia.setTime(FIN);
+        ultimoDia.set(Calendar.HOUR_OF_DAY, 23);
+        cache.invalidar(ultimoDia.getTime());
+
+        assertEquals(3, (int) cache.get("top", INICIO, FIN, 5, reporte));
+        assertEquals(2, (int) cache.get("top", fecha(2020, Calendar.APRIL, 1), fecha(2020, Calendar.APRIL, 30), 5, reporte));
+    }
+
+    @Test
+    void invalidarFueraDelRangoNoDescarta() throws Exception {
+        cache.get("top", INICIO, FIN, 5, reporte);
+
+        cache.invalidar(fecha(2020, Calendar.FEBRUARY, 29));
+        cache.invalidar(fecha(2020, Calendar.APRIL, 1));
+
+        assertEquals(1, (int) cache.get("top", INICIO, FIN, 5, reporte));
+    }
+
+    @Test
+    void invalidarTodo() throws Exception {
+        cache.get("top", INICIO, FIN, 5, reporte);
+        cache.get("ingresos", INICIO, FIN, null, reporte);
+
+        cache.invalidarTodo();
+
+        assertEquals(0, cache.getEstadisticas().get("entradas"));
+        assertEquals(3, (int) cache.get("top", INICIO, FIN, 5, reporte));
+    }
+
+    @Test
+    void noGuardaUnResultadoCalculadoDuranteUnaInvalidacion() throws Exception {
+        cache.get("top", INICIO, FIN, 5, () -> {
+            cache.invalidar(fecha(2020, Calendar.MARCH, 15));
+            return consultas.incrementAndGet();
+        });
+
+        assertEquals(2, (int) cache.get("top", INICIO, FIN, 5, reporte));
+    }
+
+    @Test
+    void elDiaDeHoyVenceConElTtl() throws Exception {
+        cache.ttl = 0;
+        Date hoy = new Date();
+
+        cache.get("top", INICIO, hoy, 5, reporte);
+        Thread.sleep(1);
+        cache.get("top", INICIO, hoy, 5, reporte);
+
+        assertEquals(2, consultas.get());
+    }
+
+    private static Date fecha(int anio, int mes, int dia) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(anio, mes, dia);
+        return calendar.getTime();
+    }
+}
@@ -0,0 +1,75 @@
+package com.delivery.demo.services.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    private static final int[] NOMBRE_APELLIDO = {0, 1};
+    private static final int[] APELLIDO = {1};
+
+    private TrigramIndex indice;
+
+    @BeforeEach
+    void setUp() {
+        indice = new TrigramIndex(new String[]{"nombre", "apellido"});
+        indice.put(1L, new String[]{"Juan", "Pérez"});
+        indice.put(2L, new String[]{"Ana", "Gómez"});
+        indice.put(3L, new String[]{"Perla", null});
+    }
+
+    @Test
+    void buscaSubcadenasEnCualquierCampo() {
+        assertEquals(new HashSet<>(Arrays.asList(1L, 3L)), indice.buscar("per", NOMBRE_APELLIDO, 10));
+        assertEquals(Collections.singleton(2L), indice.buscar("ómez", NOMBRE_APELLIDO, 10));
+    }
+
+    @Test
+    void ignoraAcentosYMayusculas() {
+        assertEquals(Collections.singleton(1L), indice.buscar("PEREZ", NOMBRE_APELLIDO, 10));
+        assertEquals(Collections.singleton(2L), indice.buscar("gomez", NOMBRE_APELLIDO, 10));
+    }
+
+    @Test
+    void buscaSoloEnLosCamposPedidos() {
+        assertEquals(Collections.singleton(1L), indice.buscar("per", APELLIDO, 10));
+    }
+
+    @Test
+    void losTrigramasNoAlcanzanSinLaSubcadena() {
+        /* Has every trigram of "perez" but does not contain it */
+        indice.put(4L, new String[]{"Rezper", "Erez"});
+
+        assertEquals(Collections.singleton(1L), indice.buscar("perez", NOMBRE_APELLIDO, 10));
+        assertEquals(Collections.emptySet(), indice.buscar("xyz", NOMBRE_APELLIDO, 10));
+    }
+
+    @Test
+    void textosCortosOAmpliosVuelvenAlSql() {
+        assertNull(indice.buscar("pe", NOMBRE_APELLIDO, 10));
+        assertNull(indice.buscar("per", NOMBRE_APELLIDO, 1));
+    }
+
+    @Test
+    void reemplazaYBorraDocumentos() {
+        indice.put(1L, new String[]{"Juan", "Sosa"});
+        indice.remove(3L);
+
+        assertEquals(Collections.emptySet(), indice.buscar("per", NOMBRE_APELLIDO, 10));
+        assertEquals(Collections.singleton(1L), indice.buscar("sos", NOMBRE_APELLIDO, 10));
+    }
+
+    @Test
+    void coincideUnDocumento() {
+        assertTrue(indice.coincide(1L, "PÉ", NOMBRE_APELLIDO));
+        assertFalse(indice.coincide(2L, "pé", NOMBRE_APELLIDO));
+        assertFalse(indice.coincide(null, "pé", NOMBRE_APELLIDO));
+        assertFalse(indice.coincide(9L, "pé", NOMBRE_APELLIDO));
+    }
+}